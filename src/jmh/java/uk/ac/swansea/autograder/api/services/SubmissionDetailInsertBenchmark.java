@@ -0,0 +1,148 @@
+package uk.ac.swansea.autograder.api.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts the detail rows of one submission the way Hibernate does with IDENTITY ids (one INSERT ... RETURNING
+ * round trip per row) and with pooled sequence ids (one nextval per 50 rows, then a JDBC batch rewritten into
+ * multi-row INSERTs by reWriteBatchedInserts). Both write to temporary tables shaped like submission_details,
+ * each in one transaction per submission.
+ *
+ * Needs a PostgreSQL database, by default the local one from application-local.example.yml:
+ * ./gradlew jmh -PjmhIncludes=SubmissionDetailInsertBenchmark
+ * Override with -Dbench.db.url=... -Dbench.db.username=... -Dbench.db.password=... through jmh.jvmArgs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubmissionDetailInsertBenchmark {
+    private static final int ALLOCATION_SIZE = 50;
+    private static final String COLUMNS =
+            "submission_id, test_case_id, actual_output, test_case_is_passed, skipped";
+
+    // detail rows per submission, i.e. test cases per problem
+    @Param({"10", "50", "200"})
+    private int testCases;
+
+    private Connection identityConnection;
+    private Connection batchedConnection;
+    private long submissionId;
+    private long nextId;
+    private long hiId;
+
+    @Setup
+    public void setUp() throws SQLException {
+        String url = System.getProperty("bench.db.url", "jdbc:postgresql://localhost:5432/autograder");
+        String username = System.getProperty("bench.db.username", "postgres");
+        String password = System.getProperty("bench.db.password", "1234");
+        identityConnection = DriverManager.getConnection(url, username, password);
+        batchedConnection = DriverManager.getConnection(
+                url + (url.contains("?") ? "&" : "?") + "reWriteBatchedInserts=true", username, password);
+        try (Statement statement = identityConnection.createStatement()) {
+            statement.execute("CREATE TEMP TABLE bench_details_identity (id BIGSERIAL PRIMARY KEY, "
+                    + "submission_id BIGINT NOT NULL, test_case_id BIGINT NOT NULL, actual_output varchar(256), "
+                    + "test_case_is_passed boolean NOT NULL, skipped boolean NOT NULL DEFAULT false)");
+        }
+        try (Statement statement = batchedConnection.createStatement()) {
+            statement.execute("CREATE TEMP SEQUENCE bench_details_seq INCREMENT BY " + ALLOCATION_SIZE);
+            statement.execute("CREATE TEMP TABLE bench_details_batched (id BIGINT PRIMARY KEY, "
+                    + "submission_id BIGINT NOT NULL, test_case_id BIGINT NOT NULL, actual_output varchar(256), "
+                    + "test_case_is_passed boolean NOT NULL, skipped boolean NOT NULL DEFAULT false)");
+        }
+        identityConnection.setAutoCommit(false);
+        batchedConnection.setAutoCommit(false);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        identityConnection.close();
+        batchedConnection.close();
+    }
+
+    @Benchmark
+    public long identityPerRow() throws SQLException {
+        submissionId++;
+        long lastId = 0;
+        try (PreparedStatement insert = identityConnection.prepareStatement(
+                "INSERT INTO bench_details_identity (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?) RETURNING id")) {
+            for (int i = 0; i < testCases; i++) {
+                bind(insert, i);
+                try (ResultSet keys = insert.executeQuery()) {
+                    keys.next();
+                    lastId = keys.getLong(1);
+                }
+            }
+        }
+        identityConnection.commit();
+        return lastId;
+    }
+
+    @Benchmark
+    public int[] sequenceBatched() throws SQLException {
+        submissionId++;
+        int[] counts;
+        try (PreparedStatement insert = batchedConnection.prepareStatement(
+                "INSERT INTO bench_details_batched (id, " + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < testCases; i++) {
+                insert.setLong(1, nextId());
+                bind(insert, 1, i);
+                insert.addBatch();
+                if ((i + 1) % ALLOCATION_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            }
+            counts = insert.executeBatch();
+        }
+        batchedConnection.commit();
+        return counts;
+    }
+
+    /**
+     * One nextval per ALLOCATION_SIZE ids, as with Hibernate's pooled optimizer.
+     */
+    private long nextId() throws SQLException {
+        if (nextId == hiId) {
+            try (Statement statement = batchedConnection.createStatement();
+                 ResultSet resultSet = statement.executeQuery("SELECT nextval('bench_details_seq')")) {
+                resultSet.next();
+                hiId = resultSet.getLong(1) + ALLOCATION_SIZE - 1;
+                nextId = hiId - ALLOCATION_SIZE;
+            }
+        }
+        return ++nextId;
+    }
+
+    private void bind(PreparedStatement insert, int testCase) throws SQLException {
+        bind(insert, 0, testCase);
+    }
+
+    private void bind(PreparedStatement insert, int offset, int testCase) throws SQLException {
+        insert.setLong(offset + 1, submissionId);
+        insert.setLong(offset + 2, testCase);
+        insert.setString(offset + 3, "output of test case " + testCase);
+        insert.setBoolean(offset + 4, testCase % 3 != 0);
+        insert.setBoolean(offset + 5, false);
+    }
+}
@@ -0,0 +1,133 @@
+package uk.ac.swansea.autograder.api.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a page of submissions with every column, as loading Submission entities did, and with only the
+ * columns of SubmissionBriefDto, as the projection queries do. Rows live in a temporary table shaped like
+ * submissions, with code and output of a typical size. The bytes of column values per page, which is what
+ * PostgreSQL sends in its text protocol apart from a few bytes of framing per value, are printed at setup.
+ *
+ * Needs a PostgreSQL database, by default the local one from application-local.example.yml:
+ * ./gradlew jmh -PjmhIncludes=SubmissionListingBenchmark
+ * Override with -Dbench.db.url=... -Dbench.db.username=... -Dbench.db.password=... through jmh.jvmArgs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubmissionListingBenchmark {
+    private static final int ROWS = 10_000;
+    private static final String ENTITY_COLUMNS = "id, problem_id, language, version, filename, code, status, "
+            + "output, grade, user_id, code_hash, test_case_version, total_test_cases, processed_test_cases, "
+            + "correct_test_cases, skipped_test_cases, lease_owner, lease_expires_at, grading_attempts";
+    private static final String BRIEF_COLUMNS = "id, problem_id, language, version, filename, user_id, status, grade";
+
+    @Param({"10", "100"})
+    private int pageSize;
+
+    // bytes of source code per submission
+    @Param({"4096"})
+    private int codeSize;
+
+    private Connection connection;
+    private PreparedStatement entityPage;
+    private PreparedStatement briefPage;
+
+    @Setup
+    public void setUp() throws SQLException {
+        String url = System.getProperty("bench.db.url", "jdbc:postgresql://localhost:5432/autograder");
+        connection = DriverManager.getConnection(url,
+                System.getProperty("bench.db.username", "postgres"),
+                System.getProperty("bench.db.password", "1234"));
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TEMP TABLE bench_submissions (id BIGSERIAL PRIMARY KEY, problem_id BIGINT, "
+                    + "language varchar(45), version varchar(45), filename varchar(255), code text, status INT, "
+                    + "output text, grade INT, user_id BIGINT, code_hash varchar(64), test_case_version INT, "
+                    + "total_test_cases INT, processed_test_cases INT, correct_test_cases INT, "
+                    + "skipped_test_cases INT, lease_owner varchar(128), lease_expires_at TIMESTAMP WITH TIME ZONE, "
+                    + "grading_attempts INT NOT NULL DEFAULT 0)");
+            // code of codeSize bytes, output of a compiler error a quarter of that
+            statement.execute("INSERT INTO bench_submissions (problem_id, language, version, filename, code, "
+                    + "status, output, grade, user_id, code_hash, test_case_version, total_test_cases, "
+                    + "processed_test_cases, correct_test_cases, skipped_test_cases) "
+                    + "SELECT i % 50, 'java', '15.0.2', 'Main.java', repeat('x', " + codeSize + "), 3, "
+                    + "repeat('e', " + codeSize / 4 + "), 50, i % 500, md5(i::text) || md5(i::text), 1, 20, 20, 10, 0 "
+                    + "FROM generate_series(1, " + ROWS + ") i");
+            statement.execute("ANALYZE bench_submissions");
+        }
+        entityPage = connection.prepareStatement(
+                "SELECT " + ENTITY_COLUMNS + " FROM bench_submissions ORDER BY id DESC LIMIT ?");
+        briefPage = connection.prepareStatement(
+                "SELECT " + BRIEF_COLUMNS + " FROM bench_submissions ORDER BY id DESC LIMIT ?");
+        System.out.printf("%nBytes per page of %d: entity columns %d, brief columns %d%n",
+                pageSize, pageBytes(entityPage), pageBytes(briefPage));
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public long entityColumns() throws SQLException {
+        return read(entityPage);
+    }
+
+    @Benchmark
+    public long briefColumns() throws SQLException {
+        return read(briefPage);
+    }
+
+    private long read(PreparedStatement page) throws SQLException {
+        page.setInt(1, pageSize);
+        long checksum = 0;
+        try (ResultSet resultSet = page.executeQuery()) {
+            int columns = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                for (int column = 1; column <= columns; column++) {
+                    Object value = resultSet.getObject(column);
+                    checksum += value == null ? 0 : value.hashCode();
+                }
+            }
+        }
+        return checksum;
+    }
+
+    private long pageBytes(PreparedStatement page) throws SQLException {
+        page.setInt(1, pageSize);
+        long bytes = 0;
+        try (ResultSet resultSet = page.executeQuery()) {
+            int columns = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                for (int column = 1; column <= columns; column++) {
+                    String value = resultSet.getString(column);
+                    bytes += value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length;
+                }
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,123 @@
+package uk.ac.swansea.autograder.api.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the page at a given depth of one problem's submissions by offset with a count, as a Page did, and
+ * after the id of the last row of the previous page, as the keyset queries do. Rows live in a temporary
+ * table shaped like the brief columns of submissions, with the (problem_id, id DESC) index of V20.
+ *
+ * Needs a PostgreSQL database, by default the local one from application-local.example.yml:
+ * ./gradlew jmh -PjmhIncludes=SubmissionPagingBenchmark
+ * Override with -Dbench.db.url=... -Dbench.db.username=... -Dbench.db.password=... through jmh.jvmArgs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubmissionPagingBenchmark {
+    private static final int ROWS = 1_000_000;
+    private static final int PROBLEMS = 10;
+    private static final int PAGE_SIZE = 10;
+    private static final String COLUMNS = "id, problem_id, language, version, filename, user_id, status, grade, "
+            + "skipped_test_cases";
+
+    // number of the page read, from 0
+    @Param({"0", "100", "5000"})
+    private int pageNo;
+
+    private Connection connection;
+    private PreparedStatement offsetPage;
+    private PreparedStatement count;
+    private PreparedStatement keysetPage;
+    private long afterId;
+
+    @Setup
+    public void setUp() throws SQLException {
+        String url = System.getProperty("bench.db.url", "jdbc:postgresql://localhost:5432/autograder");
+        connection = DriverManager.getConnection(url,
+                System.getProperty("bench.db.username", "postgres"),
+                System.getProperty("bench.db.password", "1234"));
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TEMP TABLE bench_submissions (id BIGSERIAL PRIMARY KEY, problem_id BIGINT, "
+                    + "language varchar(45), version varchar(45), filename varchar(255), user_id BIGINT, "
+                    + "status INT, grade INT, skipped_test_cases INT)");
+            statement.execute("INSERT INTO bench_submissions (problem_id, language, version, filename, user_id, "
+                    + "status, grade, skipped_test_cases) SELECT i % " + PROBLEMS
+                    + ", 'java', '15.0.2', 'Main.java', i % 500, 3, 50, 0 "
+                    + "FROM generate_series(1, " + ROWS + ") i");
+            statement.execute("CREATE INDEX ON bench_submissions (problem_id, id DESC)");
+            statement.execute("ANALYZE bench_submissions");
+        }
+        offsetPage = connection.prepareStatement("SELECT " + COLUMNS + " FROM bench_submissions "
+                + "WHERE problem_id = 1 ORDER BY id DESC OFFSET ? LIMIT " + PAGE_SIZE);
+        count = connection.prepareStatement("SELECT count(*) FROM bench_submissions WHERE problem_id = 1");
+        // one row more than the page tells whether there is a next one, as a Slice does
+        keysetPage = connection.prepareStatement("SELECT " + COLUMNS + " FROM bench_submissions "
+                + "WHERE problem_id = 1 AND id < ? ORDER BY id DESC LIMIT " + (PAGE_SIZE + 1));
+        // the last id of the previous page, as a client paging by afterId would hold
+        afterId = Long.MAX_VALUE;
+        if (pageNo > 0) {
+            try (PreparedStatement lastId = connection.prepareStatement("SELECT id FROM bench_submissions "
+                    + "WHERE problem_id = 1 ORDER BY id DESC OFFSET ? LIMIT 1")) {
+                lastId.setInt(1, pageNo * PAGE_SIZE - 1);
+                try (ResultSet resultSet = lastId.executeQuery()) {
+                    resultSet.next();
+                    afterId = resultSet.getLong(1);
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public long offsetWithCount() throws SQLException {
+        offsetPage.setInt(1, pageNo * PAGE_SIZE);
+        long checksum = read(offsetPage);
+        try (ResultSet resultSet = count.executeQuery()) {
+            resultSet.next();
+            return checksum + resultSet.getLong(1);
+        }
+    }
+
+    @Benchmark
+    public long keyset() throws SQLException {
+        keysetPage.setLong(1, afterId);
+        return read(keysetPage);
+    }
+
+    private long read(PreparedStatement page) throws SQLException {
+        long checksum = 0;
+        try (ResultSet resultSet = page.executeQuery()) {
+            while (resultSet.next()) {
+                checksum += resultSet.getLong(1);
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,84 @@
+package uk.ac.swansea.autograder.api.services.compare;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.swansea.autograder.api.entities.Problem.ComparisonMode;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the in place comparators with the previous substring + equals check.
+ * Run with: ./gradlew jmh -PjmhIncludes=OutputComparatorBenchmark
+ * Add -prof gc through jmh.profilers to see the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputComparatorBenchmark {
+    @Param({"64", "65536", "1048576"})
+    private int size;
+
+    private String stdout;
+    private String expected;
+    private OutputComparator exact;
+    private OutputComparator trailingWhitespace;
+    private OutputComparator token;
+    private OutputComparator floatEpsilon;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder(size + 16);
+        int line = 0;
+        while (builder.length() < size) {
+            builder.append(line++ * 0.5).append(' ').append(line).append('\n');
+        }
+        stdout = builder.toString();
+        expected = stdout.substring(0, stdout.length() - 1);
+        exact = OutputComparators.of(ComparisonMode.EXACT, null);
+        trailingWhitespace = OutputComparators.of(ComparisonMode.IGNORE_TRAILING_WHITESPACE, null);
+        token = OutputComparators.of(ComparisonMode.TOKEN, null);
+        floatEpsilon = OutputComparators.of(ComparisonMode.FLOAT_EPSILON, 1e-6);
+    }
+
+    @Benchmark
+    public boolean legacySubstringEquals() {
+        String output = stdout;
+        if (output != null && output.length() > 1) {
+            output = output.substring(0, output.length() - 1);
+        }
+        return Objects.equals(output, expected);
+    }
+
+    @Benchmark
+    public boolean exact() {
+        return exact.matches(stdout, expected);
+    }
+
+    @Benchmark
+    public boolean ignoreTrailingWhitespace() {
+        return trailingWhitespace.matches(stdout, expected);
+    }
+
+    @Benchmark
+    public boolean token() {
+        return token.matches(stdout, expected);
+    }
+
+    @Benchmark
+    public boolean floatEpsilon() {
+        return floatEpsilon.matches(stdout, expected);
+    }
+}
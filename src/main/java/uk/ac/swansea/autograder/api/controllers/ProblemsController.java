@@ -26,6 +26,7 @@ import uk.ac.swansea.autograder.exceptions.ResourceNotFoundException;
 import uk.ac.swansea.autograder.exceptions.UnauthorizedException;
 
 import java.util.List;
+import java.util.Map;
 
 import static uk.ac.swansea.autograder.general.enums.PermissionEnum.*;
 
@@ -50,10 +51,11 @@ public class ProblemsController {
 
     @GetMapping
     @PreAuthorize("hasAuthority('"+ VIEW_PROBLEM +"')")
-    public List<ProblemBriefDto> getProblems(@RequestParam(defaultValue = "0") Integer pageNo,
+    public List<ProblemBriefDto> getProblems(@RequestParam(required = false) Long afterId,
+                                             @RequestParam(defaultValue = "0") Integer pageNo,
                                              @RequestParam(defaultValue = "10") Integer pageSize) {
-        Pageable pageable = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
-        List<Problem> problems = problemService.getProblems(pageable);
+        Pageable pageable = PageRequest.of(afterId == null ? pageNo : 0, pageSize, Sort.by("id").descending());
+        List<Problem> problems = problemService.getProblems(afterId, pageable);
         return modelMapper.map(problems, new TypeToken<List<ProblemBriefDto>>() {}.getType());
     }
 
@@ -61,14 +63,16 @@ public class ProblemsController {
     @PreAuthorize("hasAuthority('" + VIEW_PROBLEM + "')")
     @Operation(
             summary = "Get all problems",
-            description = "Returns a paginated list of problems created by the authenticated user. Results are sorted by ID in descending order."
+            description = "Returns a paginated list of problems created by the authenticated user. Results are sorted by ID in descending order. " +
+                    "Pass the ID of the last problem as afterId to get the next page instead of pageNo."
     )
     public List<ProblemBriefDto> getOwnProblems(Authentication authentication,
+                                             @RequestParam(required = false) Long afterId,
                                              @RequestParam(defaultValue = "0") Integer pageNo,
                                              @RequestParam(defaultValue = "10") Integer pageSize) {
         MyUserDetails user = (MyUserDetails) authentication.getPrincipal();
-        Pageable pageable = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
-        List<Problem> problems = problemService.getProblemsByuserId(user.getId(), pageable);
+        Pageable pageable = PageRequest.of(afterId == null ? pageNo : 0, pageSize, Sort.by("id").descending());
+        List<Problem> problems = problemService.getProblemsByuserId(user.getId(), afterId, pageable);
         return modelMapper.map(problems, new TypeToken<List<ProblemBriefDto>>() {}.getType());
     }
 
@@ -139,6 +143,39 @@ public class ProblemsController {
         return modelMapper.map(problem, ProblemDto.class);
     }
 
+    @PostMapping("{id}/regrade")
+    @PreAuthorize("hasAuthority('" + UPDATE_PROBLEM + "')")
+    @Operation(
+            summary = "Regrade problem",
+            description = "Grades every submission to the problem again against its current test cases. " +
+                    "Regrades run after exam and practice submissions."
+    )
+    public ResponseEntity<Map<String, Integer>> regradeProblem(@PathVariable Long id)
+            throws ResourceNotFoundException {
+        int queued = submissionExecutionService.regradeProblem(id);
+        return ResponseEntity.accepted().body(Map.of("queued", queued));
+    }
+
+    @PostMapping("own/{id}/regrade")
+    @PreAuthorize("hasAuthority('" + UPDATE_OWN_PROBLEM + "')")
+    @Operation(
+            summary = "Regrade own problem",
+            description = "Grades every submission to the problem again against its current test cases. " +
+                    "Only the user who created the problem can regrade it."
+    )
+    public ResponseEntity<Map<String, Integer>> regradeOwnProblem(Authentication authentication,
+                                                                  @PathVariable Long id)
+            throws ResourceNotFoundException, UnauthorizedException {
+        // check owner id
+        MyUserDetails user = (MyUserDetails) authentication.getPrincipal();
+        Problem problem = problemService.getProblem(id);
+        if (!problem.getUserId().equals(user.getId())) {
+            throw new UnauthorizedException();
+        }
+        int queued = submissionExecutionService.regradeProblem(id);
+        return ResponseEntity.accepted().body(Map.of("queued", queued));
+    }
+
     @GetMapping("runtimes")
     //TODO: need permission, what is this endpoint for
     public List<RuntimeDto> getProblemRuntimes() {
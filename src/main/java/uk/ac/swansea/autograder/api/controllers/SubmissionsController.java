@@ -6,6 +6,7 @@ import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -14,20 +15,26 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.net.URI;
+import uk.ac.swansea.autograder.api.controllers.dto.QueueStatsDto;
 import uk.ac.swansea.autograder.api.controllers.dto.SubmissionBriefDto;
+import uk.ac.swansea.autograder.api.controllers.dto.SubmissionDeadLetterDto;
 import uk.ac.swansea.autograder.api.controllers.dto.SubmissionDetailDto;
 import uk.ac.swansea.autograder.api.controllers.dto.SubmissionDto;
 import uk.ac.swansea.autograder.api.entities.Submission;
+import uk.ac.swansea.autograder.api.messaging.SubmissionLane;
+import uk.ac.swansea.autograder.api.services.SubmissionAdmissionService;
+import uk.ac.swansea.autograder.api.services.SubmissionDeadLetterService;
 import uk.ac.swansea.autograder.api.services.SubmissionDetailService;
 import uk.ac.swansea.autograder.api.services.SubmissionExecutionService;
 import uk.ac.swansea.autograder.api.services.SubmissionService;
 import uk.ac.swansea.autograder.config.MyUserDetails;
 import uk.ac.swansea.autograder.exceptions.BadRequestException;
 import uk.ac.swansea.autograder.exceptions.ResourceNotFoundException;
+import uk.ac.swansea.autograder.exceptions.TooManyRequestsException;
 import uk.ac.swansea.autograder.exceptions.UnauthorizedException;
 
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 import static uk.ac.swansea.autograder.general.enums.PermissionEnum.*;
 
@@ -43,61 +50,133 @@ public class SubmissionsController {
     private final SubmissionService submissionService;
     private final SubmissionDetailService submissionDetailService;
     private final SubmissionExecutionService submissionExecutionService;
+    private final SubmissionAdmissionService submissionAdmissionService;
+    private final SubmissionDeadLetterService submissionDeadLetterService;
     private final ModelMapper modelMapper;
 
     public SubmissionsController(SubmissionService submissionService,
                                  SubmissionDetailService submissionDetailService,
                                  SubmissionExecutionService submissionExecutionService,
+                                 SubmissionAdmissionService submissionAdmissionService,
+                                 SubmissionDeadLetterService submissionDeadLetterService,
                                  ModelMapper modelMapper) {
         this.submissionService = submissionService;
         this.submissionDetailService = submissionDetailService;
         this.submissionExecutionService = submissionExecutionService;
+        this.submissionAdmissionService = submissionAdmissionService;
+        this.submissionDeadLetterService = submissionDeadLetterService;
         this.modelMapper = modelMapper;
     }
 
     /**
      * Get the list of submitted solutions to a specific problem
      *
-     * @return list of submissions
+     * @param afterId   id of the last submission of the previous page; pages by id instead of pageNo,
+     *                  which stays fast however deep the page
+     * @param withTotal whether to count all matching submissions; pages with afterId are never counted
+     * @return list of submissions, a page with totals only if counted
      */
     @GetMapping
     @PreAuthorize("hasAuthority('" + VIEW_SUBMISSION + "')")
-    public Page<SubmissionBriefDto> getSubmissions(@RequestParam(required = false) Long problemId,
-                                                   @RequestParam(defaultValue = "0") Integer pageNo,
-                                                   @RequestParam(defaultValue = "10") Integer pageSize) {
-        Pageable pageable = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
-        Page<Submission> submissions;
+    public Slice<SubmissionBriefDto> getSubmissions(@RequestParam(required = false) Long problemId,
+                                                    @RequestParam(required = false) Long afterId,
+                                                    @RequestParam(defaultValue = "true") Boolean withTotal,
+                                                    @RequestParam(defaultValue = "0") Integer pageNo,
+                                                    @RequestParam(defaultValue = "10") Integer pageSize) {
+        Pageable pageable = PageRequest.of(afterId == null ? pageNo : 0, pageSize, Sort.by("id").descending());
+        if (afterId == null && withTotal) {
+            if (problemId != null) {
+                return submissionService.getSubmissionsByProblemId(problemId, pageable);
+            }
+            return submissionService.getSubmissions(pageable);
+        }
+        long before = afterId == null ? Long.MAX_VALUE : afterId;
         if (problemId != null) {
-            submissions = submissionService.getSubmissionsByProblemId(problemId, pageable);
-        } else {
-            submissions = submissionService.getSubmissions(pageable);
+            return submissionService.getSubmissionsByProblemIdBefore(problemId, before, pageable);
         }
-        return submissions.map(s -> modelMapper.map(s, SubmissionBriefDto.class));
+        return submissionService.getSubmissionsBefore(before, pageable);
     }
 
     /**
      * Get the list of submitted solutions by the student
      * also for a specific problem
      *
-     * @return list of submissions
+     * @param afterId   id of the last submission of the previous page; pages by id instead of pageNo
+     * @param withTotal whether to count all matching submissions; pages with afterId are never counted
+     * @return list of submissions, a page with totals only if counted
      */
     @GetMapping("own")
     @PreAuthorize("hasAuthority('" + VIEW_OWN_SUBMISSION + "')")
-    public Page<SubmissionBriefDto> getOwnSubmissions(Authentication authentication,
-                                                   @RequestParam(required = false) Long problemId,
-                                                   @RequestParam(defaultValue = "0") Integer pageNo,
-                                                   @RequestParam(defaultValue = "10") Integer pageSize) {
+    public Slice<SubmissionBriefDto> getOwnSubmissions(Authentication authentication,
+                                                       @RequestParam(required = false) Long problemId,
+                                                       @RequestParam(required = false) Long afterId,
+                                                       @RequestParam(defaultValue = "true") Boolean withTotal,
+                                                       @RequestParam(defaultValue = "0") Integer pageNo,
+                                                       @RequestParam(defaultValue = "10") Integer pageSize) {
         MyUserDetails user = (MyUserDetails) authentication.getPrincipal();
-        Pageable pageable = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
-        Page<Submission> submissions;
+        Pageable pageable = PageRequest.of(afterId == null ? pageNo : 0, pageSize, Sort.by("id").descending());
+        if (afterId == null && withTotal) {
+            if (problemId != null) {
+                return submissionService.getSubmissionsByProblemIdAndUserId(problemId, user.getId(), pageable);
+            }
+            return submissionService.getSubmissionsByUserId(user.getId(), pageable);
+        }
+        long before = afterId == null ? Long.MAX_VALUE : afterId;
         if (problemId != null) {
-            submissions = submissionService
-                    .getSubmissionsByProblemIdAndUserId(problemId, user.getId(), pageable);
-        } else {
-            submissions = submissionService
-                    .getSubmissionsByUserId(user.getId(), pageable);
+            return submissionService.getSubmissionsByProblemIdAndUserIdBefore(problemId, user.getId(), before,
+                    pageable);
         }
-        return submissions.map(s -> modelMapper.map(s, SubmissionBriefDto.class));
+        return submissionService.getSubmissionsByUserIdBefore(user.getId(), before, pageable);
+    }
+
+    /**
+     * Get the grading queue backlog and the estimated wait for a new submission
+     *
+     * @param lane lane of the problem to be submitted to
+     * @return queue stats
+     */
+    @GetMapping("queue")
+    @PreAuthorize("hasAuthority('" + CREATE_SUBMISSION + "')")
+    public QueueStatsDto getQueueStats(@RequestParam(defaultValue = "PRACTICE") SubmissionLane lane) {
+        return submissionAdmissionService.getQueueStats(lane);
+    }
+
+    /**
+     * Get the submissions taken out of grading after failing too often
+     *
+     * @return list of dead letters, newest first
+     */
+    @GetMapping("dead-letters")
+    @PreAuthorize("hasAuthority('" + VIEW_DEAD_LETTER + "')")
+    public Page<SubmissionDeadLetterDto> getDeadLetters(@RequestParam(defaultValue = "0") Integer pageNo,
+                                                        @RequestParam(defaultValue = "10") Integer pageSize) {
+        Pageable pageable = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
+        return submissionDeadLetterService.getDeadLetters(pageable)
+                .map(d -> modelMapper.map(d, SubmissionDeadLetterDto.class));
+    }
+
+    /**
+     * Get the specific dead letter
+     *
+     * @return dead letter
+     */
+    @GetMapping("dead-letters/{id}")
+    @PreAuthorize("hasAuthority('" + VIEW_DEAD_LETTER + "')")
+    public SubmissionDeadLetterDto getDeadLetter(@PathVariable Long id) throws ResourceNotFoundException {
+        return modelMapper.map(submissionDeadLetterService.getDeadLetter(id), SubmissionDeadLetterDto.class);
+    }
+
+    /**
+     * Queue the submission of a dead letter for grading again
+     *
+     * @return id of the submission queued
+     */
+    @PostMapping("dead-letters/{id}/replay")
+    @PreAuthorize("hasAuthority('" + REPLAY_DEAD_LETTER + "')")
+    public ResponseEntity<Map<String, Long>> replayDeadLetter(@PathVariable Long id)
+            throws ResourceNotFoundException, BadRequestException {
+        Submission submission = submissionDeadLetterService.replay(id);
+        return ResponseEntity.accepted().body(Map.of("submissionId", submission.getId()));
     }
 
     /**
@@ -138,17 +217,7 @@ public class SubmissionsController {
     @GetMapping("{id}/detail")
     @PreAuthorize("hasAuthority('" + VIEW_SUBMISSION + "')")
     public List<SubmissionDetailDto> getSubmissionDetails(@PathVariable Long id) {
-        return submissionDetailService.getSubmissionDetail(id)
-                .stream()
-                .map(submissionDetail -> SubmissionDetailDto.builder()
-                        .id(submissionDetail.getId())
-                        .submissionId(submissionDetail.getSubmissionId())
-                        .input(submissionDetail.getTestCase().getInput())
-                        .expectedOutput(submissionDetail.getTestCase().getExpectedOutput())
-                        .actualOutput(submissionDetail.getActualOutput())
-                        .testCaseIsPassed(submissionDetail.getTestCaseIsPassed())
-                        .build()
-                ).collect(Collectors.toList());
+        return submissionDetailService.getSubmissionDetails(id);
     }
 
     /**
@@ -158,23 +227,8 @@ public class SubmissionsController {
     @PreAuthorize("hasAuthority('" + VIEW_OWN_SUBMISSION + "')")
     public List<SubmissionDetailDto> getOwnSubmissionDetails(Authentication authentication,
                                                           @PathVariable Long id) throws ResourceNotFoundException, UnauthorizedException {
-        // check owner id
         MyUserDetails user = (MyUserDetails) authentication.getPrincipal();
-        Submission submission = submissionService.getSubmission(id);
-        if (!submission.getUserId().equals(user.getId())) {
-            throw new UnauthorizedException();
-        }
-        return submissionDetailService.getSubmissionDetail(id)
-                .stream()
-                .map(submissionDetail -> SubmissionDetailDto.builder()
-                        .id(submissionDetail.getId())
-                        .submissionId(submissionDetail.getSubmissionId())
-                        .input(submissionDetail.getTestCase().getInput())
-                        .expectedOutput(submissionDetail.getTestCase().getExpectedOutput())
-                        .actualOutput(submissionDetail.getActualOutput())
-                        .testCaseIsPassed(submissionDetail.getTestCaseIsPassed())
-                        .build()
-                ).collect(Collectors.toList());
+        return submissionDetailService.getOwnSubmissionDetails(id, user.getId());
     }
 
 
@@ -187,7 +241,7 @@ public class SubmissionsController {
     @PreAuthorize("hasAuthority('" + CREATE_SUBMISSION + "')")
     public ResponseEntity<Submission> submitSolution(Authentication authentication,
                                      @Valid @RequestBody SubmissionDto submissionDto)
-            throws ResourceNotFoundException, BadRequestException {
+            throws ResourceNotFoundException, BadRequestException, TooManyRequestsException {
         MyUserDetails user = (MyUserDetails) authentication.getPrincipal();
         submissionDto.setUserId(user.getId());
         Submission submission = submissionExecutionService.submitSolution(submissionDto);
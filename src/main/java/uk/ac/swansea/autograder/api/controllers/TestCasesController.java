@@ -41,14 +41,15 @@ public class TestCasesController {
     @GetMapping
     @PreAuthorize("hasAuthority('" + VIEW_TEST_CASE + "')")
     public List<TestCase> getTestCases(@RequestParam(required = false) Long problemId,
+                                       @RequestParam(required = false) Long afterId,
                                        @RequestParam(defaultValue = "0") Integer pageNo,
                                        @RequestParam(defaultValue = "10") Integer pageSize) {
-        Pageable pageable = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
+        Pageable pageable = PageRequest.of(afterId == null ? pageNo : 0, pageSize, Sort.by("id").descending());
         List<TestCase> testCases;
         if (problemId != null) {
-            testCases = testCaseService.getAllTestCasesByProblemId(problemId, pageable);
+            testCases = testCaseService.getAllTestCasesByProblemId(problemId, afterId, pageable);
         } else {
-            testCases = testCaseService.getAllTestCases(pageable);
+            testCases = testCaseService.getAllTestCases(afterId, pageable);
         }
         return testCases;
     }
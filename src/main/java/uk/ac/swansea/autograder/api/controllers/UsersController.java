@@ -45,11 +45,13 @@ public class UsersController {
 
     @GetMapping
     @PreAuthorize("hasAuthority('" + VIEW_USER + "')")
-    @Operation(summary = "Get all users", description = "Returns a paginated list of users")
-    public List<UserDto> getUsers(@RequestParam(defaultValue = "0") Integer pageNo,
+    @Operation(summary = "Get all users", description = "Returns a paginated list of users. " +
+            "Pass the ID of the last user as afterId to get the next page instead of pageNo.")
+    public List<UserDto> getUsers(@RequestParam(required = false) Long afterId,
+                                       @RequestParam(defaultValue = "0") Integer pageNo,
                                        @RequestParam(defaultValue = "10") Integer pageSize) {
-        Pageable pageable = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
-        List<User> users = userService.getUsers(pageable);
+        Pageable pageable = PageRequest.of(afterId == null ? pageNo : 0, pageSize, Sort.by("id").descending());
+        List<User> users = userService.getUsers(afterId, pageable);
         return modelMapper.map(users, new TypeToken<List<UserDto>>() {}.getType());
     }
 
@@ -3,11 +3,23 @@ package uk.ac.swansea.autograder.api.controllers.dto;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.PositiveOrZero;
+import uk.ac.swansea.autograder.api.entities.Problem;
 
 @EqualsAndHashCode(callSuper = true)
 @Data
 public class ProblemDto extends ProblemBriefDto {
     @NotBlank
     private String description;
+    private Problem.GradingPolicy gradingPolicy;
+    @Min(1)
+    private Integer maxFailures;
+    private Problem.ComparisonMode comparisonMode;
+    @PositiveOrZero
+    private Double epsilon;
+    @Min(1)
+    private Integer schedulingWeight;
+    private Problem.Assessment assessment;
 }
@@ -0,0 +1,26 @@
+package uk.ac.swansea.autograder.api.controllers.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import uk.ac.swansea.autograder.api.messaging.SubmissionLane;
+
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueueStatsDto {
+    private SubmissionLane lane;
+    // submissions queued or being graded per lane
+    private Map<SubmissionLane, Long> lanes;
+    // submissions queued or being graded ahead of a new submission on the lane
+    private Long backlog;
+    // submissions waiting in the deferred lane
+    private Long deferred;
+    private Long estimatedWaitSeconds;
+    // false when new submissions are currently rejected or deferred
+    private Boolean accepting;
+}
@@ -1,10 +1,17 @@
 package uk.ac.swansea.autograder.api.controllers.dto;
 
 import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import uk.ac.swansea.autograder.api.entities.Submission;
 
+/**
+ * Built directly by the listing queries of SubmissionRepository, keep the constructor in step with them.
+ */
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class SubmissionBriefDto {
     private Long id;
     private Long problemId;
@@ -17,4 +24,6 @@ public class SubmissionBriefDto {
     private Long userId;
     private Submission.Status status;
     private Integer grade;
+    // test cases not run because the grading policy stopped early, counted as failed in the grade
+    private Integer skippedTestCases;
 }
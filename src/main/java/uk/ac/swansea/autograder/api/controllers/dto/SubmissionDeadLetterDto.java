@@ -0,0 +1,16 @@
+package uk.ac.swansea.autograder.api.controllers.dto;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+public class SubmissionDeadLetterDto {
+    private Long id;
+    private Long submissionId;
+    private Long problemId;
+    private Long userId;
+    private Integer attempts;
+    private String error;
+    private Instant createdAt;
+}
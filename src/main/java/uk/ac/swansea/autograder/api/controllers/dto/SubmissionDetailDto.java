@@ -16,4 +16,6 @@ public class SubmissionDetailDto {
     private String expectedOutput;
     private String actualOutput;
     private Boolean testCaseIsPassed;
+    // not run because the grading policy stopped early, counts as failed
+    private Boolean skipped;
 }
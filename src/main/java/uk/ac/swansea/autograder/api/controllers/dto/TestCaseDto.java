@@ -1,6 +1,7 @@
 package uk.ac.swansea.autograder.api.controllers.dto;
 
 import lombok.Data;
+import uk.ac.swansea.autograder.api.entities.Problem;
 
 @Data
 public class TestCaseDto {
@@ -8,4 +9,5 @@ public class TestCaseDto {
     private Long problemId;
     private String input;
     private String expectedOutput;
+    private Problem.ComparisonMode comparisonMode;
 }
@@ -17,6 +17,52 @@ public class Problem {
     private String description;
     private Status status;
     private Long userId;
+    // bumped whenever the problem's test cases change, see Submission.testCaseVersion
+    private Integer testCaseVersion = 0;
+    // kept with the test cases, so submitting does not need to count them
+    private Integer testCaseCount = 0;
+    private GradingPolicy gradingPolicy = GradingPolicy.RUN_ALL;
+    // used by STOP_AFTER_N_FAILURES
+    private Integer maxFailures;
+    private ComparisonMode comparisonMode = ComparisonMode.EXACT;
+    // tolerance for FLOAT_EPSILON
+    private Double epsilon;
+    // relative grading cost of one submission, spent from its user's fair share of the workers
+    private Integer schedulingWeight = 1;
+    private Assessment assessment = Assessment.PRACTICE;
 
     public enum Status {ACTIVE, EXPIRED, ARCHIVED}
+
+    /**
+     * How many test cases run once the verdict is known.
+     * Stopping early saves execution time; test cases that were not run are recorded as skipped and count as failed.
+     */
+    public enum GradingPolicy {RUN_ALL, STOP_AT_FIRST_FAILURE, STOP_AFTER_N_FAILURES}
+
+    /**
+     * How the output of a run is compared with the expected output. Test cases can override the problem's mode.
+     * EXACT ignores only a final line terminator, IGNORE_TRAILING_WHITESPACE ignores whitespace at the end of
+     * every line and trailing blank lines, TOKEN compares whitespace separated tokens, and FLOAT_EPSILON
+     * additionally accepts numbers within epsilon of the expected value.
+     */
+    public enum ComparisonMode {EXACT, IGNORE_TRAILING_WHITESPACE, TOKEN, FLOAT_EPSILON}
+
+    /**
+     * EXAM submissions are graded on the highest priority lane, ahead of PRACTICE submissions and regrades.
+     */
+    public enum Assessment {PRACTICE, EXAM}
+
+    /**
+     * @return number of failed test cases after which grading stops, 0 to run every test case
+     */
+    public int failureBudget() {
+        if (gradingPolicy == null) {
+            return 0;
+        }
+        return switch (gradingPolicy) {
+            case RUN_ALL -> 0;
+            case STOP_AT_FIRST_FAILURE -> 1;
+            case STOP_AFTER_N_FAILURES -> maxFailures != null && maxFailures > 0 ? maxFailures : 1;
+        };
+    }
 }
\ No newline at end of file
@@ -3,6 +3,8 @@ package uk.ac.swansea.autograder.api.entities;
 import jakarta.persistence.*;
 import lombok.Data;
 
+import java.time.Instant;
+
 @Entity
 @Table(name = "submissions")
 @Data
@@ -22,10 +24,23 @@ public class Submission {
     private String output;
     private Integer grade;
     private Long userId;
+    // fingerprint of language, version, filename and code, used to spot resubmissions
+    private String codeHash;
+    private Integer testCaseVersion;
 
     private Integer totalTestCases;
     private Integer processedTestCases;
     private Integer correctTestCases;
+    // not run because the problem's grading policy stopped early
+    private Integer skippedTestCases;
+
+    // node grading the submission, null while it is queued
+    private String leaseOwner;
+    // while PROCESSING, the submission is queued or graded again once this time has passed;
+    // null once it was quarantined as a dead letter
+    private Instant leaseExpiresAt;
+    // gradings that failed or never finished, see SubmissionDeadLetterService
+    private Integer gradingAttempts = 0;
 
     public enum Status {NEW, COMPILE_ERROR, PROCESSING, WRONG_ANSWER, ACCEPTED}
 }
\ No newline at end of file
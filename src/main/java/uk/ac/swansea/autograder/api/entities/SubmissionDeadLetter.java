@@ -0,0 +1,28 @@
+package uk.ac.swansea.autograder.api.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * A submission taken out of grading after failing too often, kept until an admin replays it.
+ */
+@Entity
+@Table(name = "submission_dead_letters")
+@Data
+public class SubmissionDeadLetter {
+
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long submissionId;
+    private Long problemId;
+    private Long userId;
+    private Integer attempts;
+    // last failure
+    private String error;
+    private Instant createdAt;
+}
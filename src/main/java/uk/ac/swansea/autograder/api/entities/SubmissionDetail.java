@@ -8,9 +8,11 @@ import jakarta.persistence.*;
 @Table(name = "submission_details")
 @Data
 public class SubmissionDetail {
+    // a sequence rather than IDENTITY lets Hibernate batch inserts; ids are allocated 50 at a time
     @Id
     @Column(name = "id")
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "submission_details_seq")
+    @SequenceGenerator(name = "submission_details_seq", sequenceName = "submission_details_seq", allocationSize = 50)
     private Long id;
 
     private Long submissionId;
@@ -20,4 +22,5 @@ public class SubmissionDetail {
     private TestCase testCase;
     private String actualOutput;
     private Boolean testCaseIsPassed;
+    private Boolean skipped = false;
 }
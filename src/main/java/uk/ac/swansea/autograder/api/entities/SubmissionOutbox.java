@@ -0,0 +1,27 @@
+package uk.ac.swansea.autograder.api.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import uk.ac.swansea.autograder.api.messaging.SubmissionLane;
+
+/**
+ * A submission waiting to be queued for grading.
+ * Written in the same transaction as the submission and removed once it is on the queue.
+ */
+@Entity
+@Table(name = "submission_outbox")
+@Data
+public class SubmissionOutbox {
+
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long submissionId;
+    private Long userId;
+    private Integer weight;
+    private SubmissionLane lane;
+    // queued on the deferred lane, see SubmissionAdmissionService
+    private Boolean deferred = false;
+}
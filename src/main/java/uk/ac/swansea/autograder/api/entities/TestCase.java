@@ -17,4 +17,6 @@ public class TestCase {
     private Long problemId;
     private String input;
     private String expectedOutput;
+    // overrides the problem's comparison mode when set
+    private Problem.ComparisonMode comparisonMode;
 }
\ No newline at end of file
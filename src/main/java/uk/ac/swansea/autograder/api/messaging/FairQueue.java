@@ -0,0 +1,85 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deficit round-robin queue.
+ *
+ * Items are queued per flow and flows are served in turn. Every turn a flow earns quantum credits and takes items
+ * while its credits cover their cost, so over time each backlogged flow gets the same share of cost, however many
+ * items it queued. An item costing more than the quantum waits until its flow has saved enough credits.
+ * A flow that empties loses its credits, so an idle flow cannot save up for a burst.
+ *
+ * Not thread-safe.
+ */
+class FairQueue<T> {
+    private final int quantum;
+    private final Map<Object, Flow<T>> flows = new HashMap<>();
+    // flows with queued items, in serving order
+    private final ArrayDeque<Flow<T>> rotation = new ArrayDeque<>();
+    private int size;
+
+    FairQueue(int quantum) {
+        this.quantum = Math.max(1, quantum);
+    }
+
+    void add(Object flowKey, int cost, T item) {
+        Flow<T> flow = flows.computeIfAbsent(flowKey, Flow::new);
+        if (flow.items.isEmpty()) {
+            rotation.addLast(flow);
+        }
+        flow.items.addLast(new Entry<>(Math.max(1, cost), item));
+        size++;
+    }
+
+    /**
+     * @return next item in fair order, null if the queue is empty
+     */
+    T poll() {
+        while (!rotation.isEmpty()) {
+            Flow<T> flow = rotation.peekFirst();
+            Entry<T> head = flow.items.peekFirst();
+            if (flow.deficit < head.cost) {
+                // end of this flow's turn
+                flow.deficit += quantum;
+                rotation.addLast(rotation.pollFirst());
+                continue;
+            }
+            flow.deficit -= head.cost;
+            flow.items.pollFirst();
+            size--;
+            if (flow.items.isEmpty()) {
+                rotation.pollFirst();
+                flows.remove(flow.key);
+            }
+            return head.item;
+        }
+        return null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return number of flows with queued items
+     */
+    int flowCount() {
+        return rotation.size();
+    }
+
+    private static final class Flow<T> {
+        private final Object key;
+        private final ArrayDeque<Entry<T>> items = new ArrayDeque<>();
+        private long deficit;
+
+        Flow(Object key) {
+            this.key = key;
+        }
+    }
+
+    private record Entry<T>(int cost, T item) {
+    }
+}
@@ -0,0 +1,87 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import uk.ac.swansea.autograder.exceptions.ResourceNotFoundException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Hands submissions from the {@link InMemorySubmissionDispatcher} lanes to the {@link SubmissionWorkers},
+ * with one thread per lane. A lane's thread stops taking while that lane's worker queue is full.
+ *
+ * Submissions are acknowledged once graded, also when grading failed: there is no other node to retry them,
+ * and a submission whose grading did not finish is queued again when its lease expires.
+ */
+@Component
+@ConditionalOnProperty(name = "app.messaging.dispatcher", havingValue = "MEMORY")
+public class InMemorySubmissionConsumer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InMemorySubmissionConsumer.class);
+
+    private final InMemorySubmissionDispatcher dispatcher;
+    private final SubmissionReceiver submissionReceiver;
+    private final SubmissionWorkers submissionWorkers;
+    private final SubmissionLaneMetrics submissionLaneMetrics;
+    private final List<Thread> threads = new ArrayList<>();
+
+    public InMemorySubmissionConsumer(InMemorySubmissionDispatcher dispatcher,
+                                      SubmissionReceiver submissionReceiver,
+                                      SubmissionWorkers submissionWorkers,
+                                      SubmissionLaneMetrics submissionLaneMetrics) {
+        this.dispatcher = dispatcher;
+        this.submissionReceiver = submissionReceiver;
+        this.submissionWorkers = submissionWorkers;
+        this.submissionLaneMetrics = submissionLaneMetrics;
+    }
+
+    @PostConstruct
+    public void start() {
+        for (SubmissionLane lane : SubmissionLane.values()) {
+            Thread thread = new Thread(() -> consume(lane), "submission-queue-" + lane.name().toLowerCase(Locale.ROOT));
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        LOGGER.info("Consuming the in-memory submission queue");
+    }
+
+    @PreDestroy
+    public void stop() {
+        // a submission taken but not yet handed to a worker stays in the write-ahead log
+        threads.forEach(Thread::interrupt);
+    }
+
+    private void consume(SubmissionLane lane) {
+        try {
+            while (true) {
+                InMemorySubmissionDispatcher.Queued queued = dispatcher.take(lane);
+                SubmissionMessage message = queued.message();
+                submissionWorkers.execute(lane, message.userId(), message.weight(), () -> handle(lane, queued));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(SubmissionLane lane, InMemorySubmissionDispatcher.Queued queued) {
+        SubmissionMessage message = queued.message();
+        submissionLaneMetrics.recordWait(lane, Duration.ofNanos(System.nanoTime() - queued.queuedAt()));
+        try {
+            submissionReceiver.receiveMessage(message);
+        } catch (ResourceNotFoundException e) {
+            LOGGER.warn("Dropping queued submissionId=#{}, it no longer exists", message.submissionId());
+        } catch (Exception e) {
+            LOGGER.error("Grading submissionId=#{} failed, it is queued again once its lease expires: {}",
+                    message.submissionId(), e.getMessage());
+        } finally {
+            dispatcher.acknowledge(lane, queued);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Queues submissions in this JVM, for deployments with a single node. Needs no Redis.
+ *
+ * Each {@link SubmissionLane} has a bounded lock-free {@link RingBuffer} drained by one
+ * {@link InMemorySubmissionConsumer} thread, which parks while its lane is empty and is unparked by the next
+ * send. When a lane is full, a send waits up to offerTimeout and then fails, leaving the submission in the
+ * outbox until the relay tries again.
+ *
+ * Without a write-ahead log, queued submissions are lost when the process stops and are only queued again
+ * once their lease expires. With walPath set, they are recorded in a local file and queued again at startup;
+ * those that no longer fit their lane wait on the deferred queue.
+ */
+@Component
+@ConditionalOnProperty(name = "app.messaging.dispatcher", havingValue = "MEMORY")
+public class InMemorySubmissionDispatcher implements SubmissionDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InMemorySubmissionDispatcher.class);
+
+    private static final int SPINS = 100;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * A submission in the queue.
+     *
+     * @param seq      position in the write-ahead log, 0 without one
+     * @param queuedAt System.nanoTime() when it was queued
+     */
+    record Queued(SubmissionMessage message, long seq, long queuedAt) {
+    }
+
+    private final Map<SubmissionLane, RingBuffer<Queued>> lanes = new EnumMap<>(SubmissionLane.class);
+    private final Map<SubmissionLane, AtomicLong> inFlight = new EnumMap<>(SubmissionLane.class);
+    private final AtomicReferenceArray<Thread> takers = new AtomicReferenceArray<>(SubmissionLane.values().length);
+    private final ConcurrentLinkedQueue<Queued> deferred = new ConcurrentLinkedQueue<>();
+    private final AtomicLong deferredCount = new AtomicLong();
+    private final long offerTimeout;
+    private final String walPath;
+    private final boolean walFsync;
+    private SubmissionWriteAheadLog wal;
+
+    public InMemorySubmissionDispatcher(@Value("${app.messaging.memory.capacity:1024}") int capacity,
+                                        @Value("${app.messaging.memory.offerTimeout:100}") long offerTimeout,
+                                        @Value("${app.messaging.memory.walPath:}") String walPath,
+                                        @Value("${app.messaging.memory.walFsync:false}") boolean walFsync) {
+        for (SubmissionLane lane : SubmissionLane.values()) {
+            lanes.put(lane, new RingBuffer<>(capacity));
+            inFlight.put(lane, new AtomicLong());
+        }
+        this.offerTimeout = TimeUnit.MILLISECONDS.toNanos(Math.max(0, offerTimeout));
+        this.walPath = walPath;
+        this.walFsync = walFsync;
+        LOGGER.info("In-memory submission queue: {} per lane, write-ahead log: {}",
+                lanes.get(SubmissionLane.PRACTICE).capacity(), walPath.isBlank() ? "none" : walPath);
+    }
+
+    /**
+     * Queue again what the write-ahead log holds from the previous run.
+     */
+    @PostConstruct
+    public void recover() throws IOException {
+        if (walPath.isBlank()) {
+            return;
+        }
+        wal = new SubmissionWriteAheadLog(Path.of(walPath), walFsync);
+        int recovered = 0;
+        for (SubmissionWriteAheadLog.Entry entry : wal.recover()) {
+            Queued queued = new Queued(entry.message(), entry.seq(), System.nanoTime());
+            if (entry.deferred() || !lanes.get(entry.message().lane()).offer(queued)) {
+                addDeferred(queued);
+            }
+            recovered++;
+        }
+        if (recovered > 0) {
+            LOGGER.warn("Recovered {} queued submission(s) from {}", recovered, walPath);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (wal != null) {
+            wal.close();
+        }
+    }
+
+    @Override
+    public void send(SubmissionMessage message) {
+        LOGGER.debug("Sending submissionId=#{} on lane {}", message.submissionId(), message.lane());
+        Queued queued = new Queued(message, log(message, false), System.nanoTime());
+        if (!offer(queued, offerTimeout)) {
+            unlog(queued);
+            throw new IllegalStateException("Submission queue of the " + message.lane() + " lane is full");
+        }
+    }
+
+    @Override
+    public void defer(SubmissionMessage message) {
+        LOGGER.info("Deferring submissionId=#{}", message.submissionId());
+        addDeferred(new Queued(message, log(message, true), System.nanoTime()));
+    }
+
+    @Override
+    public long depth(SubmissionLane lane) {
+        return lanes.get(lane).size() + inFlight.get(lane).get();
+    }
+
+    @Override
+    public long deferredBacklog() {
+        return deferredCount.get();
+    }
+
+    /**
+     * Stops at the first lane that is full; that submission goes back to the end of the deferred queue.
+     */
+    @Override
+    public int promote(int count) {
+        int moved = 0;
+        while (moved < count) {
+            Queued deferredEntry = deferred.poll();
+            if (deferredEntry == null) {
+                break;
+            }
+            deferredCount.decrementAndGet();
+            SubmissionMessage message = deferredEntry.message();
+            // logged on its lane before it leaves the deferred queue, a crash in between queues it twice
+            Queued queued = new Queued(message, log(message, false), System.nanoTime());
+            if (!offer(queued, 0)) {
+                unlog(queued);
+                addDeferred(deferredEntry);
+                break;
+            }
+            unlog(deferredEntry);
+            moved++;
+        }
+        return moved;
+    }
+
+    /**
+     * Take the oldest submission of the lane, waiting while there is none.
+     * It counts as being graded until it is {@link #acknowledge acknowledged}.
+     */
+    Queued take(SubmissionLane lane) throws InterruptedException {
+        RingBuffer<Queued> ring = lanes.get(lane);
+        int spins = 0;
+        while (true) {
+            Queued queued = ring.poll();
+            if (queued != null) {
+                inFlight.get(lane).incrementAndGet();
+                return queued;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (spins < SPINS) {
+                spins++;
+                Thread.onSpinWait();
+                continue;
+            }
+            takers.set(lane.ordinal(), Thread.currentThread());
+            // a send between the poll above and registering as taker did not unpark this thread
+            if (ring.size() == 0) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            takers.set(lane.ordinal(), null);
+        }
+    }
+
+    /**
+     * Remove a taken submission for good, whether or not its grading succeeded.
+     */
+    void acknowledge(SubmissionLane lane, Queued queued) {
+        inFlight.get(lane).decrementAndGet();
+        unlog(queued);
+    }
+
+    /**
+     * @param timeout nanoseconds to wait for room in a full lane, 0 to try once
+     */
+    private boolean offer(Queued queued, long timeout) {
+        SubmissionLane lane = queued.message().lane();
+        RingBuffer<Queued> ring = lanes.get(lane);
+        long deadline = System.nanoTime() + timeout;
+        long park = 1_000;
+        while (!ring.offer(queued)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(Math.min(park, remaining));
+            park = Math.min(park * 2, MAX_PARK_NANOS);
+        }
+        Thread taker = takers.get(lane.ordinal());
+        if (taker != null) {
+            LockSupport.unpark(taker);
+        }
+        return true;
+    }
+
+    private void addDeferred(Queued queued) {
+        deferred.add(queued);
+        deferredCount.incrementAndGet();
+    }
+
+    private long log(SubmissionMessage message, boolean deferred) {
+        return wal == null ? 0 : wal.append(message, deferred).seq();
+    }
+
+    private void unlog(Queued queued) {
+        if (wal != null) {
+            wal.remove(queued.seq());
+        }
+    }
+}
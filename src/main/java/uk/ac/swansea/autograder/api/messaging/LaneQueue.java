@@ -0,0 +1,93 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+/**
+ * One {@link FairQueue} per {@link SubmissionLane}.
+ *
+ * STRICT always serves the highest priority lane that has items. WEIGHTED shares picks between the lanes with
+ * items in proportion to their weights (smooth weighted round-robin), so a low priority lane still progresses
+ * under constant load from the lanes above it.
+ *
+ * Not thread-safe.
+ */
+class LaneQueue<T> {
+    enum Policy {STRICT, WEIGHTED}
+
+    private static final SubmissionLane[] LANES = SubmissionLane.values();
+
+    private final Policy policy;
+    private final int[] weights;
+    private final int[] current = new int[LANES.length];
+    private final FairQueue<T>[] queues;
+
+    /**
+     * @param weights weight of each lane in {@link SubmissionLane} order, only used by WEIGHTED;
+     *                lanes without a weight get 1
+     */
+    @SuppressWarnings("unchecked")
+    LaneQueue(Policy policy, int[] weights) {
+        this.policy = policy;
+        this.weights = new int[LANES.length];
+        this.queues = new FairQueue[LANES.length];
+        for (int i = 0; i < LANES.length; i++) {
+            this.weights[i] = i < weights.length ? Math.max(1, weights[i]) : 1;
+            this.queues[i] = new FairQueue<>(1);
+        }
+    }
+
+    void add(SubmissionLane lane, Object flowKey, int cost, T item) {
+        queues[lane.ordinal()].add(flowKey, cost, item);
+    }
+
+    /**
+     * @return next item, null if every lane is empty
+     */
+    T poll() {
+        int lane = policy == Policy.STRICT ? firstNonEmpty() : nextWeighted();
+        return lane < 0 ? null : queues[lane].poll();
+    }
+
+    int size(SubmissionLane lane) {
+        return queues[lane.ordinal()].size();
+    }
+
+    /**
+     * @return number of users with queued items, over all lanes
+     */
+    int flowCount() {
+        int flows = 0;
+        for (FairQueue<T> queue : queues) {
+            flows += queue.flowCount();
+        }
+        return flows;
+    }
+
+    private int firstNonEmpty() {
+        for (int i = 0; i < queues.length; i++) {
+            if (queues[i].size() > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int nextWeighted() {
+        int total = 0;
+        int best = -1;
+        for (int i = 0; i < queues.length; i++) {
+            if (queues[i].size() == 0) {
+                // an idle lane starts afresh, like an idle flow in FairQueue
+                current[i] = 0;
+                continue;
+            }
+            current[i] += weights[i];
+            total += weights[i];
+            if (best < 0 || current[i] > current[best]) {
+                best = i;
+            }
+        }
+        if (best >= 0) {
+            current[best] -= total;
+        }
+        return best;
+    }
+}
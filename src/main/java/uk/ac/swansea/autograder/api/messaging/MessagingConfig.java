@@ -1,13 +1,21 @@
 package uk.ac.swansea.autograder.api.messaging;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.MapRecord;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.listener.PatternTopic;
-import org.springframework.data.redis.listener.RedisMessageListenerContainer;
-import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer;
+import org.springframework.scheduling.TaskScheduler;
+import uk.ac.swansea.autograder.api.services.SubmissionDeadLetterService;
 import uk.ac.swansea.autograder.api.services.SubmissionExecutionService;
+import uk.ac.swansea.autograder.api.services.SubmissionLeaseService;
+
+import java.time.Duration;
 
 /**
  * Redis message queue configuration for asynchronous submission processing.
@@ -15,28 +23,49 @@ import uk.ac.swansea.autograder.api.services.SubmissionExecutionService;
  * Message queues are ideal for requests which may take a long time to process.
  * Enables asynchronously executing tests without blocking REST response time.
  * Also allows using third party code execution engines and balancing load during peak hours.
+ *
+ * Submissions go through a Redis Stream read by a consumer group, so with several nodes each submission
+ * is graded by exactly one of them, and entries added while no node is listening wait in the stream.
+ * A single node can instead queue them in memory, see {@link InMemorySubmissionDispatcher}.
  */
 @Configuration
 public class MessagingConfig {
-    @Bean
-    RedisMessageListenerContainer container(RedisConnectionFactory connectionFactory,
-                                            MessageListenerAdapter listenerAdapter) {
-
-        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
-        container.setConnectionFactory(connectionFactory);
-        container.addMessageListener(listenerAdapter, new PatternTopic("submissionId"));
-
-        return container;
-    }
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessagingConfig.class);
 
     @Bean
-    MessageListenerAdapter listenerAdapter(SubmissionReceiver submissionReceiver) {
-        return new MessageListenerAdapter(submissionReceiver, "receiveMessage");
+    @ConditionalOnProperty(name = "app.messaging.dispatcher", havingValue = "REDIS", matchIfMissing = true)
+    StreamMessageListenerContainer<String, MapRecord<String, String, String>> streamContainer(
+            RedisConnectionFactory connectionFactory,
+            @Value("${app.messaging.batchSize:10}") int batchSize,
+            @Value("${app.messaging.pollTimeout:2000}") long pollTimeout,
+            @Value("${app.messaging.readRetryDelay:1000}") long readRetryDelay) {
+        StreamMessageListenerContainer.StreamMessageListenerContainerOptions<String, MapRecord<String, String, String>> options =
+                StreamMessageListenerContainer.StreamMessageListenerContainerOptions.builder()
+                        .batchSize(batchSize)
+                        .pollTimeout(Duration.ofMillis(pollTimeout))
+                        .errorHandler(e -> {
+                            LOGGER.error("Reading the submission stream failed, retrying in {} ms: {}",
+                                    readRetryDelay, e.getMessage());
+                            // subscriptions stay active on errors, do not spin while Redis is unreachable
+                            try {
+                                Thread.sleep(readRetryDelay);
+                            } catch (InterruptedException interrupted) {
+                                Thread.currentThread().interrupt();
+                            }
+                        })
+                        .build();
+        return StreamMessageListenerContainer.create(connectionFactory, options);
     }
 
     @Bean
-    SubmissionReceiver receiver(SubmissionExecutionService submissionExecutionService) {
-        return new SubmissionReceiver(submissionExecutionService);
+    SubmissionReceiver receiver(SubmissionExecutionService submissionExecutionService,
+                                SubmissionSender submissionSender,
+                                SubmissionLeaseService submissionLeaseService,
+                                SubmissionDeadLetterService submissionDeadLetterService,
+                                TaskScheduler taskScheduler,
+                                @Value("${app.execution.deferDelay:5000}") long deferDelay) {
+        return new SubmissionReceiver(submissionExecutionService, submissionSender, submissionLeaseService,
+                submissionDeadLetterService, taskScheduler, deferDelay);
     }
 
     @Bean
@@ -0,0 +1,89 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queues submissions for grading on the Redis Stream of their {@link SubmissionLane}, read by
+ * {@link SubmissionStreamConsumer}. Deferred submissions wait on a separate stream and are moved to their lane
+ * by {@link #promote(int)}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.messaging.dispatcher", havingValue = "REDIS", matchIfMissing = true)
+public class RedisSubmissionDispatcher implements SubmissionDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisSubmissionDispatcher.class);
+
+    private final StreamOperations<String, Object, Object> streamOperations;
+    private final String stream;
+    private final String deferredStream;
+
+    public RedisSubmissionDispatcher(StringRedisTemplate stringRedisTemplate,
+                                     @Value("${app.messaging.stream:submissions}") String stream) {
+        this.streamOperations = stringRedisTemplate.opsForStream();
+        this.stream = stream;
+        this.deferredStream = stream + ":deferred";
+    }
+
+    @Override
+    public void send(SubmissionMessage message) {
+        LOGGER.info("Sending submissionId=#{} on lane {}", message.submissionId(), message.lane());
+        add(message.lane().streamKey(stream), message.toFields());
+    }
+
+    @Override
+    public void defer(SubmissionMessage message) {
+        LOGGER.info("Deferring submissionId=#{}", message.submissionId());
+        add(deferredStream, message.toFields());
+    }
+
+    @Override
+    public long depth(SubmissionLane lane) {
+        Long size = streamOperations.size(lane.streamKey(stream));
+        return size == null ? 0 : size;
+    }
+
+    @Override
+    public long deferredBacklog() {
+        Long size = streamOperations.size(deferredStream);
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * An entry is only re-added by the node whose XDEL removed it, so concurrent promoters never duplicate it.
+     */
+    @Override
+    public int promote(int count) {
+        List<MapRecord<String, Object, Object>> records =
+                streamOperations.range(deferredStream, Range.unbounded(), Limit.limit().count(count));
+        int moved = 0;
+        for (MapRecord<String, Object, Object> record : records) {
+            Long removed = streamOperations.delete(deferredStream, record.getId());
+            if (removed == null || removed != 1) {
+                continue;
+            }
+            try {
+                send(SubmissionMessage.fromFields(record.getValue()));
+                moved++;
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Dropping malformed deferred entry {}: {}", record.getId(), record.getValue());
+            }
+        }
+        return moved;
+    }
+
+    private void add(String key, Map<String, String> fields) {
+        streamOperations.add(StreamRecords.string(fields).withStreamKey(key));
+    }
+}
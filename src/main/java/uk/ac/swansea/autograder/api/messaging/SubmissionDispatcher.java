@@ -0,0 +1,27 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+/**
+ * Transport that hands queued submissions to the grading workers, selected by app.messaging.dispatcher.
+ *
+ * REDIS queues them on Redis Streams shared by every node, MEMORY keeps them in this JVM for single node
+ * deployments. Both keep one queue per {@link SubmissionLane} plus one for deferred submissions.
+ */
+public interface SubmissionDispatcher {
+    void send(SubmissionMessage message);
+
+    void defer(SubmissionMessage message);
+
+    /**
+     * @return submissions queued or being graded on the lane
+     */
+    long depth(SubmissionLane lane);
+
+    long deferredBacklog();
+
+    /**
+     * Move the oldest deferred submissions to their lanes.
+     *
+     * @return number of submissions moved
+     */
+    int promote(int count);
+}
@@ -0,0 +1,25 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+import uk.ac.swansea.autograder.api.entities.Problem;
+
+import java.util.Locale;
+
+/**
+ * Priority lanes submissions are queued on, highest priority first.
+ * Each lane has its own stream; PRACTICE uses the base stream name so entries queued before lanes existed
+ * are still graded.
+ */
+public enum SubmissionLane {
+    EXAM, PRACTICE, REGRADE;
+
+    /**
+     * @return lane new submissions to a problem are graded on
+     */
+    public static SubmissionLane of(Problem problem) {
+        return problem.getAssessment() == Problem.Assessment.EXAM ? EXAM : PRACTICE;
+    }
+
+    String streamKey(String baseStream) {
+        return this == PRACTICE ? baseStream : baseStream + ":" + name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,50 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per lane queue metrics, whichever {@link SubmissionDispatcher} is in use.
+ */
+@Component
+public class SubmissionLaneMetrics {
+    private final SubmissionSender submissionSender;
+    private final Map<SubmissionLane, AtomicLong> depths = new EnumMap<>(SubmissionLane.class);
+    private final Map<SubmissionLane, Timer> waits = new EnumMap<>(SubmissionLane.class);
+
+    public SubmissionLaneMetrics(SubmissionSender submissionSender, MeterRegistry meterRegistry) {
+        this.submissionSender = submissionSender;
+        for (SubmissionLane lane : SubmissionLane.values()) {
+            AtomicLong depth = new AtomicLong();
+            depths.put(lane, depth);
+            Gauge.builder("submission.lane.depth", depth, AtomicLong::get)
+                    .description("Submissions queued or being graded on the lane, on all nodes")
+                    .tag("lane", lane.name())
+                    .register(meterRegistry);
+            waits.put(lane, Timer.builder("submission.lane.wait")
+                    .description("Time from queueing a submission to the start of its grading")
+                    .tag("lane", lane.name())
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry));
+        }
+    }
+
+    public void recordWait(SubmissionLane lane, Duration wait) {
+        waits.get(lane).record(wait.isNegative() ? Duration.ZERO : wait);
+    }
+
+    @Scheduled(fixedDelayString = "${app.messaging.depthInterval:10000}")
+    public void refreshDepths() {
+        for (SubmissionLane lane : SubmissionLane.values()) {
+            depths.get(lane).set(submissionSender.depth(lane));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A submission waiting to be graded, as queued on the stream.
+ * userId and weight let {@link SubmissionWorkers} share the workers fairly between users.
+ *
+ * @param submissionId submission to grade
+ * @param userId       owner of the submission, null for entries queued before it was recorded
+ * @param weight       relative grading cost, see Problem.schedulingWeight
+ * @param lane         priority lane, kept so a deferred submission returns to its lane
+ */
+public record SubmissionMessage(Long submissionId, Long userId, int weight, SubmissionLane lane) {
+    static final String SUBMISSION_ID = "submissionId";
+    static final String USER_ID = "userId";
+    static final String WEIGHT = "weight";
+    static final String LANE = "lane";
+
+    public SubmissionMessage {
+        weight = Math.max(1, weight);
+        lane = lane == null ? SubmissionLane.PRACTICE : lane;
+    }
+
+    Map<String, String> toFields() {
+        Map<String, String> fields = new HashMap<>();
+        fields.put(SUBMISSION_ID, submissionId.toString());
+        if (userId != null) {
+            fields.put(USER_ID, userId.toString());
+        }
+        fields.put(WEIGHT, String.valueOf(weight));
+        fields.put(LANE, lane.name());
+        return fields;
+    }
+
+    /**
+     * @throws NumberFormatException if the entry has no valid submission id
+     */
+    static SubmissionMessage fromFields(Map<?, ?> fields) {
+        Object userId = fields.get(USER_ID);
+        Object weight = fields.get(WEIGHT);
+        Object lane = fields.get(LANE);
+        return new SubmissionMessage(Long.valueOf(Objects.toString(fields.get(SUBMISSION_ID), null)),
+                userId == null ? null : Long.valueOf(userId.toString()),
+                weight == null ? 1 : Integer.parseInt(weight.toString()),
+                lane == null ? null : laneOf(lane.toString()));
+    }
+
+    private static SubmissionLane laneOf(String name) {
+        try {
+            return SubmissionLane.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
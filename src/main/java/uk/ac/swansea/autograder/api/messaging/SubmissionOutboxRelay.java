@@ -0,0 +1,125 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.ac.swansea.autograder.api.entities.SubmissionOutbox;
+import uk.ac.swansea.autograder.api.repositories.SubmissionOutboxRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves submissions from the outbox table to the queue.
+ *
+ * Submissions are written together with their outbox row in one transaction, so a crash can no longer leave
+ * a submission in PROCESSING that was never queued. The relay locks a batch of rows, queues them and deletes
+ * them in one transaction; nodes skip each other's locked rows. Delivery is at least once: if the delete does
+ * not commit after the rows were queued, they are queued again.
+ */
+@Component
+public class SubmissionOutboxRelay {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubmissionOutboxRelay.class);
+
+    private final SubmissionOutboxRepository submissionOutboxRepository;
+    private final SubmissionSender submissionSender;
+    private final TransactionTemplate transactionTemplate;
+    private final TaskScheduler taskScheduler;
+    private final int batchSize;
+    private final AtomicBoolean wakeUpScheduled = new AtomicBoolean();
+
+    public SubmissionOutboxRelay(SubmissionOutboxRepository submissionOutboxRepository,
+                                 SubmissionSender submissionSender,
+                                 PlatformTransactionManager transactionManager,
+                                 TaskScheduler taskScheduler,
+                                 @Value("${app.outbox.batchSize:100}") int batchSize) {
+        this.submissionOutboxRepository = submissionOutboxRepository;
+        this.submissionSender = submissionSender;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.taskScheduler = taskScheduler;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Relay as soon as possible, after the current transaction commits if there is one.
+     * Calls made while a run is already scheduled are merged into it.
+     */
+    public void wakeUp() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    scheduleRelay();
+                }
+            });
+        } else {
+            scheduleRelay();
+        }
+    }
+
+    private void scheduleRelay() {
+        if (wakeUpScheduled.compareAndSet(false, true)) {
+            taskScheduler.schedule(() -> {
+                wakeUpScheduled.set(false);
+                relay();
+            }, Instant.now());
+        }
+    }
+
+    /**
+     * Queue everything in the outbox, one batch per transaction.
+     * Also runs on a timer to pick up rows whose wake up was lost, e.g. to a restart.
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.relayInterval:1000}")
+    public void relay() {
+        try {
+            int relayed;
+            do {
+                relayed = relayBatch();
+            } while (relayed == batchSize);
+        } catch (RuntimeException e) {
+            LOGGER.error("Relaying the submission outbox failed: {}", e.getMessage());
+        }
+    }
+
+    private int relayBatch() {
+        Integer relayed = transactionTemplate.execute(status -> {
+            List<SubmissionOutbox> rows = submissionOutboxRepository.lockOldest(batchSize);
+            List<Long> sent = new ArrayList<>(rows.size());
+            for (SubmissionOutbox row : rows) {
+                try {
+                    send(row);
+                } catch (RuntimeException e) {
+                    // keep what was queued so far, the rest is retried on the next run
+                    LOGGER.warn("Queueing submissionId=#{} failed: {}", row.getSubmissionId(), e.getMessage());
+                    break;
+                }
+                sent.add(row.getId());
+            }
+            if (!sent.isEmpty()) {
+                submissionOutboxRepository.deleteAllByIdIn(sent);
+            }
+            return sent.size() < rows.size() ? 0 : sent.size();
+        });
+        return relayed == null ? 0 : relayed;
+    }
+
+    private void send(SubmissionOutbox row) {
+        SubmissionMessage message = new SubmissionMessage(row.getSubmissionId(), row.getUserId(),
+                row.getWeight() == null ? 1 : row.getWeight(), row.getLane());
+        if (Boolean.TRUE.equals(row.getDeferred())) {
+            submissionSender.defer(message);
+        } else {
+            submissionSender.send(message);
+        }
+    }
+}
@@ -2,24 +2,66 @@ package uk.ac.swansea.autograder.api.messaging;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+import uk.ac.swansea.autograder.api.services.SubmissionDeadLetterService;
 import uk.ac.swansea.autograder.api.services.SubmissionExecutionService;
+import uk.ac.swansea.autograder.api.services.SubmissionLeaseService;
+import uk.ac.swansea.autograder.exceptions.ExecutionUnavailableException;
 import uk.ac.swansea.autograder.exceptions.ResourceNotFoundException;
 
+import java.time.Instant;
+
 /**
  * Redis message receiver for processing submission requests asynchronously.
  * Uses constructor injection for better testability and explicit dependency declaration.
+ * Submissions that could not run because the execution engine was unavailable are sent again after a delay,
+ * keeping their lease so they are recovered if this node stops before sending them.
+ * Other failures are retried the same way with a growing delay, until the submission is quarantined,
+ * see {@link SubmissionDeadLetterService}.
  */
 public class SubmissionReceiver {
     private static final Logger LOGGER = LoggerFactory.getLogger(SubmissionReceiver.class);
 
     private final SubmissionExecutionService submissionExecutionService;
+    private final SubmissionSender submissionSender;
+    private final SubmissionLeaseService submissionLeaseService;
+    private final SubmissionDeadLetterService submissionDeadLetterService;
+    private final TaskScheduler taskScheduler;
+    private final long deferDelay;
 
-    public SubmissionReceiver(SubmissionExecutionService submissionExecutionService) {
+    public SubmissionReceiver(SubmissionExecutionService submissionExecutionService,
+                              SubmissionSender submissionSender,
+                              SubmissionLeaseService submissionLeaseService,
+                              SubmissionDeadLetterService submissionDeadLetterService,
+                              TaskScheduler taskScheduler,
+                              long deferDelay) {
         this.submissionExecutionService = submissionExecutionService;
+        this.submissionSender = submissionSender;
+        this.submissionLeaseService = submissionLeaseService;
+        this.submissionDeadLetterService = submissionDeadLetterService;
+        this.taskScheduler = taskScheduler;
+        this.deferDelay = deferDelay;
+    }
+
+    public void receiveMessage(SubmissionMessage message) throws ResourceNotFoundException {
+        LOGGER.info("Received submissionId=#{}", message.submissionId());
+        try {
+            submissionExecutionService.runSubmission(message.submissionId());
+        } catch (ExecutionUnavailableException e) {
+            long delay = Math.max(deferDelay, e.getRetryAfterMillis());
+            LOGGER.warn("Execution unavailable for submissionId=#{} ({}), retrying in {} ms",
+                    message.submissionId(), e.getMessage(), delay);
+            retryLater(message, delay);
+        } catch (RuntimeException e) {
+            long delay = submissionDeadLetterService.recordFailure(message.submissionId(), e);
+            if (delay >= 0) {
+                retryLater(message, delay);
+            }
+        }
     }
 
-    public void receiveMessage(String submissionId) throws ResourceNotFoundException {
-        LOGGER.info("Received submissionId=#{}", submissionId);
-        submissionExecutionService.runSubmission(Long.valueOf(submissionId));
+    private void retryLater(SubmissionMessage message, long delay) {
+        submissionLeaseService.hold(message.submissionId(), delay);
+        taskScheduler.schedule(() -> submissionSender.send(message), Instant.now().plusMillis(delay));
     }
 }
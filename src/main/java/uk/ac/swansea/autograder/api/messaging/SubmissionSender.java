@@ -1,22 +1,57 @@
 package uk.ac.swansea.autograder.api.messaging;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+/**
+ * Queues submissions for grading through the configured {@link SubmissionDispatcher}.
+ */
 @Service
 public class SubmissionSender {
-    private static final Logger LOGGER = LoggerFactory.getLogger(SubmissionSender.class);
+    private final SubmissionDispatcher submissionDispatcher;
 
-    private final StringRedisTemplate stringRedisTemplate;
+    public SubmissionSender(SubmissionDispatcher submissionDispatcher) {
+        this.submissionDispatcher = submissionDispatcher;
+    }
+
+    public void send(SubmissionMessage message) {
+        submissionDispatcher.send(message);
+    }
+
+    public void defer(SubmissionMessage message) {
+        submissionDispatcher.defer(message);
+    }
+
+    /**
+     * @return submissions queued or being graded on the lane
+     */
+    public long depth(SubmissionLane lane) {
+        return submissionDispatcher.depth(lane);
+    }
+
+    /**
+     * @return submissions queued or being graded on the lane and on every lane with a higher priority,
+     * the queue a new submission on the lane waits behind when lanes are served strictly by priority
+     */
+    public long backlog(SubmissionLane lane) {
+        long backlog = 0;
+        for (SubmissionLane higher : SubmissionLane.values()) {
+            if (higher.compareTo(lane) <= 0) {
+                backlog += depth(higher);
+            }
+        }
+        return backlog;
+    }
 
-    public SubmissionSender(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+    public long deferredBacklog() {
+        return submissionDispatcher.deferredBacklog();
     }
 
-    public void send(Long submissionId) {
-        LOGGER.info("Sending submissionId=#{}", submissionId);
-        stringRedisTemplate.convertAndSend("submissionId", String.valueOf(submissionId));
+    /**
+     * Move the oldest deferred submissions to their lanes.
+     *
+     * @return number of submissions moved
+     */
+    public int promote(int count) {
+        return submissionDispatcher.promote(count);
     }
 }
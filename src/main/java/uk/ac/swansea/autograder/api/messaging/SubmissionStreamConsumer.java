@@ -0,0 +1,239 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamReadRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import uk.ac.swansea.autograder.exceptions.ResourceNotFoundException;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads submissions from the Redis Streams of every {@link SubmissionLane} as part of a consumer group.
+ *
+ * An entry is acknowledged (and deleted) only after its submission was graded or deferred. If a node dies
+ * while grading, the entry stays pending in the group; once it has been idle for claimMinIdle another node
+ * claims it and grades it again. claimMinIdle must therefore be longer than the slowest grading run
+ * plus the time an entry can wait in the worker queue. Entries this node already handed to its workers are
+ * never claimed by itself, however long they wait there.
+ *
+ * Entries are graded by {@link SubmissionWorkers}, which decides the order between lanes; each lane's reader
+ * stops reading while that lane's worker queue is full.
+ */
+@Component
+@ConditionalOnProperty(name = "app.messaging.dispatcher", havingValue = "REDIS", matchIfMissing = true)
+public class SubmissionStreamConsumer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubmissionStreamConsumer.class);
+
+    private final StreamMessageListenerContainer<String, MapRecord<String, String, String>> container;
+    private final StreamOperations<String, Object, Object> streamOperations;
+    private final SubmissionReceiver submissionReceiver;
+    private final SubmissionWorkers submissionWorkers;
+    private final SubmissionLaneMetrics submissionLaneMetrics;
+    private final String stream;
+    private final String group;
+    private final String consumerName;
+    private final Duration claimMinIdle;
+    private final int claimBatchSize;
+    // entries waiting in the worker queue or being graded on this node
+    private final Set<RecordId> dispatched = ConcurrentHashMap.newKeySet();
+
+    public SubmissionStreamConsumer(StreamMessageListenerContainer<String, MapRecord<String, String, String>> container,
+                                    StringRedisTemplate stringRedisTemplate,
+                                    SubmissionReceiver submissionReceiver,
+                                    SubmissionWorkers submissionWorkers,
+                                    SubmissionLaneMetrics submissionLaneMetrics,
+                                    @Value("${app.messaging.stream:submissions}") String stream,
+                                    @Value("${app.messaging.group:graders}") String group,
+                                    @Value("${app.messaging.consumerName:}") String consumerName,
+                                    @Value("${app.messaging.claimMinIdle:300000}") long claimMinIdle,
+                                    @Value("${app.messaging.batchSize:10}") int claimBatchSize) {
+        this.container = container;
+        this.streamOperations = stringRedisTemplate.opsForStream();
+        this.submissionReceiver = submissionReceiver;
+        this.submissionWorkers = submissionWorkers;
+        this.submissionLaneMetrics = submissionLaneMetrics;
+        this.stream = stream;
+        this.group = group;
+        // node-unique by default (host@pid), so a node never claims its own entries as another consumer
+        this.consumerName = consumerName.isBlank() ? ManagementFactory.getRuntimeMXBean().getName() : consumerName;
+        this.claimMinIdle = Duration.ofMillis(claimMinIdle);
+        this.claimBatchSize = Math.max(1, claimBatchSize);
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        for (SubmissionLane lane : SubmissionLane.values()) {
+            String key = lane.streamKey(stream);
+            createGroup(key);
+            // by default a subscription is cancelled on the first error, a failover or timeout would stop the lane
+            StreamReadRequest<String> request = StreamReadRequest
+                    .builder(StreamOffset.create(key, ReadOffset.lastConsumed()))
+                    .consumer(Consumer.from(group, consumerName))
+                    .autoAcknowledge(false)
+                    .cancelOnError(e -> false)
+                    .build();
+            container.register(request, record -> dispatch(lane, record.getId(), record.getValue()));
+            LOGGER.info("Consuming stream {} in group {} as {}", key, group, consumerName);
+        }
+    }
+
+    /**
+     * Claim entries whose consumer stopped acknowledging them, typically because its node died.
+     * Runs on the shared scheduler, so it never waits for room in a full lane; the claimed entries that do not
+     * fit stay pending and are claimed again on a later run.
+     */
+    @Scheduled(fixedDelayString = "${app.messaging.claimInterval:30000}")
+    public void reclaim() {
+        for (SubmissionLane lane : SubmissionLane.values()) {
+            String key = lane.streamKey(stream);
+            RecordId[] stale = stalePending(key);
+            if (stale.length == 0) {
+                continue;
+            }
+            List<MapRecord<String, Object, Object>> claimed =
+                    streamOperations.claim(key, group, consumerName + "-claim", claimMinIdle, stale);
+            LOGGER.warn("Claimed {} stale submission(s) from the {} lane", claimed.size(), lane);
+            for (MapRecord<String, Object, Object> record : claimed) {
+                if (!tryDispatch(lane, record.getId(), record.getValue())) {
+                    LOGGER.info("The {} lane is full, leaving claimed entries from {} pending", lane, record.getId());
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Up to claimBatchSize pending entries of the stream that were idle for claimMinIdle and are not graded here.
+     * The pending list is read page by page, so entries this node is working on, which are typically the oldest,
+     * do not hide the entries of a dead consumer behind them.
+     */
+    private RecordId[] stalePending(String key) {
+        List<RecordId> stale = new ArrayList<>(claimBatchSize);
+        Range<String> range = Range.unbounded();
+        while (stale.size() < claimBatchSize) {
+            PendingMessages page = streamOperations.pending(key, group, range, claimBatchSize);
+            for (PendingMessage message : page) {
+                if (message.getElapsedTimeSinceLastDelivery().compareTo(claimMinIdle) >= 0
+                        && !dispatched.contains(message.getId()) && stale.size() < claimBatchSize) {
+                    stale.add(message.getId());
+                }
+            }
+            if (page.size() < claimBatchSize) {
+                break;
+            }
+            // the next page starts right after the last id of this one
+            RecordId last = page.get(page.size() - 1).getId();
+            range = Range.rightUnbounded(Range.Bound.inclusive(
+                    RecordId.of(last.getTimestamp(), last.getSequence() + 1).getValue()));
+        }
+        return stale.toArray(RecordId[]::new);
+    }
+
+    private void dispatch(SubmissionLane lane, RecordId recordId, Map<?, ?> fields) {
+        SubmissionMessage message = parse(lane, recordId, fields);
+        if (message == null || !dispatched.add(recordId)) {
+            return;
+        }
+        try {
+            submissionWorkers.execute(lane, message.userId(), message.weight(), () -> handle(lane, recordId, message));
+        } catch (InterruptedException e) {
+            // shutting down, the entry stays pending and is reclaimed
+            dispatched.remove(recordId);
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            dispatched.remove(recordId);
+            throw e;
+        }
+    }
+
+    /**
+     * Like {@link #dispatch} without waiting for room in the lane.
+     *
+     * @return false if the lane is full and the entry was left pending
+     */
+    private boolean tryDispatch(SubmissionLane lane, RecordId recordId, Map<?, ?> fields) {
+        SubmissionMessage message = parse(lane, recordId, fields);
+        if (message == null || !dispatched.add(recordId)) {
+            return true;
+        }
+        boolean taken = false;
+        try {
+            taken = submissionWorkers.tryExecute(lane, message.userId(), message.weight(),
+                    () -> handle(lane, recordId, message));
+        } finally {
+            if (!taken) {
+                dispatched.remove(recordId);
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * @return message of the entry, null if it was malformed and dropped
+     */
+    private SubmissionMessage parse(SubmissionLane lane, RecordId recordId, Map<?, ?> fields) {
+        try {
+            return SubmissionMessage.fromFields(fields);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Dropping malformed stream entry {}: {}", recordId, fields);
+            acknowledge(lane, recordId);
+            return null;
+        }
+    }
+
+    private void handle(SubmissionLane lane, RecordId recordId, SubmissionMessage message) {
+        // stream ids start with the time the entry was added
+        submissionLaneMetrics.recordWait(lane, Duration.ofMillis(System.currentTimeMillis() - recordId.getTimestamp()));
+        try {
+            submissionReceiver.receiveMessage(message);
+            acknowledge(lane, recordId);
+        } catch (ResourceNotFoundException e) {
+            LOGGER.warn("Dropping stream entry {} for unknown submissionId=#{}", recordId, message.submissionId());
+            acknowledge(lane, recordId);
+        } catch (Exception e) {
+            // left pending, another attempt is made once it is claimed
+            LOGGER.error("Grading submissionId=#{} failed, entry {} left pending: {}",
+                    message.submissionId(), recordId, e.getMessage());
+        } finally {
+            dispatched.remove(recordId);
+        }
+    }
+
+    private void acknowledge(SubmissionLane lane, RecordId recordId) {
+        String key = lane.streamKey(stream);
+        streamOperations.acknowledge(key, group, recordId);
+        streamOperations.delete(key, recordId);
+    }
+
+    private void createGroup(String key) {
+        try {
+            streamOperations.createGroup(key, ReadOffset.from("0"), group);
+        } catch (DataAccessException e) {
+            // BUSYGROUP: the group already exists
+            LOGGER.debug("Consumer group {} on {} not created: {}", group, key, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool grading submissions read from the stream.
+ *
+ * At most size submissions are graded at once and at most queueCapacity more wait per lane; when both are full,
+ * {@link #execute} blocks the reader of that lane, so nothing more is read from its stream until a slot frees up.
+ * Lanes are admitted separately, so a full regrade lane never keeps exam submissions from being read.
+ * PLATFORM mode uses a fixed pool of platform threads. VIRTUAL mode starts a virtual thread per submission and
+ * limits concurrency with a semaphore, so a grading run blocked on Piston does not hold a platform thread.
+ *
+ * Waiting submissions are not graded in arrival order but taken from a {@link LaneQueue}: lanes are served by
+ * priority (STRICT) or by weight (WEIGHTED), and within a lane by a {@link FairQueue} keyed by user, each
+ * submission costing its problem's weight, so a user who queued many submissions gets the same share of the
+ * workers as one who queued a single one. Only submissions already read from the stream can be reordered,
+ * so queueCapacity is also the window over which the workers are shared fairly. A grading run that started
+ * is never interrupted, so a higher priority submission can still wait for one run to finish.
+ */
+@Component
+public class SubmissionWorkers {
+    public enum Mode {PLATFORM, VIRTUAL}
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubmissionWorkers.class);
+
+    private final ExecutorService executor;
+    private final Semaphore[] admitted;
+    private final Semaphore running;
+    private final int size;
+    private final LaneQueue<Task> pending;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    // exponentially weighted moving average of grading time
+    private double averageMillis;
+
+    public SubmissionWorkers(MeterRegistry meterRegistry,
+                             @Value("${app.workers.mode:PLATFORM}") Mode mode,
+                             @Value("${app.workers.size:4}") int size,
+                             @Value("${app.workers.queueCapacity:32}") int queueCapacity,
+                             @Value("${app.workers.lanePolicy:STRICT}") LaneQueue.Policy lanePolicy,
+                             @Value("${app.workers.laneWeights:16,4,1}") List<Integer> laneWeights) {
+        this.size = Math.max(1, size);
+        this.admitted = new Semaphore[SubmissionLane.values().length];
+        for (int i = 0; i < admitted.length; i++) {
+            admitted[i] = new Semaphore(this.size + Math.max(0, queueCapacity));
+        }
+        this.running = new Semaphore(this.size);
+        this.pending = new LaneQueue<>(lanePolicy, laneWeights.stream().mapToInt(Integer::intValue).toArray());
+        this.executor = mode == Mode.VIRTUAL
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("grader-", 0).factory())
+                : Executors.newFixedThreadPool(this.size, Thread.ofPlatform().name("grader-", 0).factory());
+
+        Gauge.builder("submission.workers.active", active, AtomicInteger::get)
+                .description("Submissions being graded")
+                .register(meterRegistry);
+        Gauge.builder("submission.workers.queued", queued, AtomicInteger::get)
+                .description("Submissions read from the stream and waiting for a worker")
+                .register(meterRegistry);
+        for (SubmissionLane lane : SubmissionLane.values()) {
+            Gauge.builder("submission.lane.queued", this, workers -> workers.getQueued(lane))
+                    .description("Submissions of the lane read from the stream and waiting for a worker")
+                    .tag("lane", lane.name())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("submission.workers.waiting_users", this, SubmissionWorkers::getWaitingUsers)
+                .description("Users with submissions waiting for a worker")
+                .register(meterRegistry);
+        FunctionCounter.builder("submission.workers.completed", completed, AtomicLong::get)
+                .description("Submissions the workers finished, successfully or not")
+                .register(meterRegistry);
+        LOGGER.info("Submission workers: {} mode, size {}, queue {} per lane, {} lane priority",
+                mode, this.size, queueCapacity, lanePolicy);
+    }
+
+    /**
+     * Hand a grading task to the pool, waiting while the pool and the lane's queue are full.
+     *
+     * @param lane   priority lane the task was read from
+     * @param userId owner of the submission, the key tasks are shared fairly by
+     * @param weight cost of the task relative to other tasks of the same user
+     */
+    public void execute(SubmissionLane lane, Long userId, int weight, Runnable task) throws InterruptedException {
+        admitted[lane.ordinal()].acquire();
+        submit(lane, userId, weight, task);
+    }
+
+    /**
+     * Hand a grading task to the pool unless the pool and the lane's queue are full.
+     *
+     * @return false if the task was not taken
+     */
+    public boolean tryExecute(SubmissionLane lane, Long userId, int weight, Runnable task) {
+        if (!admitted[lane.ordinal()].tryAcquire()) {
+            return false;
+        }
+        submit(lane, userId, weight, task);
+        return true;
+    }
+
+    private void submit(SubmissionLane lane, Long userId, int weight, Runnable task) {
+        synchronized (pending) {
+            pending.add(lane, userId, weight, new Task(lane, task));
+        }
+        queued.incrementAndGet();
+        try {
+            // every runner takes whichever task is next in priority and fair order, not necessarily this one
+            executor.execute(this::runNext);
+        } catch (RuntimeException e) {
+            drop();
+            throw e;
+        }
+    }
+
+    private void runNext() {
+        try {
+            running.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drop();
+            return;
+        }
+        Task task;
+        synchronized (pending) {
+            task = pending.poll();
+        }
+        queued.decrementAndGet();
+        active.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            task.runnable().run();
+        } finally {
+            recordDuration(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            active.decrementAndGet();
+            completed.incrementAndGet();
+            running.release();
+            admitted[task.lane().ordinal()].release();
+        }
+    }
+
+    /**
+     * Remove a task whose runner will never start; its stream entry stays pending and is reclaimed.
+     */
+    private void drop() {
+        Task task;
+        synchronized (pending) {
+            task = pending.poll();
+        }
+        queued.decrementAndGet();
+        admitted[task.lane().ordinal()].release();
+    }
+
+    private synchronized void recordDuration(long millis) {
+        averageMillis = averageMillis == 0 ? millis : averageMillis * 0.9 + millis * 0.1;
+    }
+
+    /**
+     * @return moving average of the time a submission takes to grade, 0 before the first one finished
+     */
+    public synchronized double getAverageMillis() {
+        return averageMillis;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getQueued(SubmissionLane lane) {
+        synchronized (pending) {
+            return pending.size(lane);
+        }
+    }
+
+    public int getWaitingUsers() {
+        synchronized (pending) {
+            return pending.flowCount();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            LOGGER.warn("Submission workers still busy at shutdown, their stream entries will be reclaimed");
+            executor.shutdownNow();
+        }
+    }
+
+    private record Task(SubmissionLane lane, Runnable runnable) {
+    }
+}
@@ -0,0 +1,171 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local file recording which submissions sit in the in-memory queue, so they are queued again after a crash.
+ *
+ * Each queued submission is appended as a line "+ seq submissionId userId weight lane deferred" and each
+ * submission taken off the queue for good as "- seq". Lines reach the operating system before the call
+ * returns, which survives a crash of the process; with fsync they also survive a crash of the machine,
+ * at the cost of a disk flush per line. Once the file holds many more lines than pending entries it is
+ * rewritten with only the pending ones.
+ */
+class SubmissionWriteAheadLog implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubmissionWriteAheadLog.class);
+
+    private static final int COMPACT_MIN_LINES = 10_000;
+
+    /**
+     * A pending entry as recorded in the log.
+     */
+    record Entry(long seq, SubmissionMessage message, boolean deferred) {
+    }
+
+    private final Path path;
+    private final boolean fsync;
+    private final Map<Long, Entry> pending = new LinkedHashMap<>();
+    private FileChannel channel;
+    private long lines;
+    private long nextSeq = 1;
+
+    SubmissionWriteAheadLog(Path path, boolean fsync) {
+        this.path = path;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Read the entries left by the previous run and start a fresh, compacted file.
+     *
+     * @return entries that were queued and never taken off, oldest first
+     */
+    synchronized List<Entry> recover() throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        if (Files.exists(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    replay(line);
+                }
+            }
+        }
+        compact();
+        return new ArrayList<>(pending.values());
+    }
+
+    synchronized Entry append(SubmissionMessage message, boolean deferred) {
+        Entry entry = new Entry(nextSeq++, message, deferred);
+        write(format(entry));
+        pending.put(entry.seq(), entry);
+        return entry;
+    }
+
+    synchronized void remove(long seq) {
+        if (pending.remove(seq) == null) {
+            return;
+        }
+        write("- " + seq + "\n");
+        if (lines >= COMPACT_MIN_LINES && lines > 2L * pending.size()) {
+            try {
+                compact();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void replay(String line) {
+        String[] parts = line.trim().split(" ");
+        try {
+            if (parts.length == 7 && parts[0].equals("+")) {
+                long seq = Long.parseLong(parts[1]);
+                SubmissionMessage message = new SubmissionMessage(Long.valueOf(parts[2]),
+                        parts[3].equals("-") ? null : Long.valueOf(parts[3]),
+                        Integer.parseInt(parts[4]), SubmissionLane.valueOf(parts[5]));
+                pending.put(seq, new Entry(seq, message, Boolean.parseBoolean(parts[6])));
+                nextSeq = Math.max(nextSeq, seq + 1);
+            } else if (parts.length == 2 && parts[0].equals("-")) {
+                pending.remove(Long.parseLong(parts[1]));
+            } else if (!line.isBlank()) {
+                LOGGER.warn("Skipping malformed line in {}: {}", path, line);
+            }
+        } catch (IllegalArgumentException e) {
+            // also a line cut short by a crash
+            LOGGER.warn("Skipping malformed line in {}: {}", path, line);
+        }
+    }
+
+    private void compact() throws IOException {
+        close();
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Entry entry : pending.values()) {
+                writeFully(out, format(entry));
+            }
+            out.force(true);
+        }
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        lines = pending.size();
+    }
+
+    private static String format(Entry entry) {
+        SubmissionMessage message = entry.message();
+        return "+ " + entry.seq() + " " + message.submissionId()
+                + " " + (message.userId() == null ? "-" : message.userId())
+                + " " + message.weight() + " " + message.lane().name() + " " + entry.deferred() + "\n";
+    }
+
+    private void write(String line) {
+        if (channel == null) {
+            throw new IllegalStateException("Write-ahead log " + path + " is not open");
+        }
+        try {
+            writeFully(channel, line);
+            if (fsync) {
+                channel.force(false);
+            }
+            lines++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
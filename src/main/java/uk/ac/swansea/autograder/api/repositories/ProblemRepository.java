@@ -1,6 +1,8 @@
 package uk.ac.swansea.autograder.api.repositories;
 
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import uk.ac.swansea.autograder.api.entities.Problem;
@@ -8,5 +10,17 @@ import uk.ac.swansea.autograder.api.entities.Problem;
 import java.util.List;
 
 public interface ProblemRepository extends PagingAndSortingRepository<Problem, Long>, CrudRepository<Problem, Long> {
+    // List rather than Page, so no count query runs
+    List<Problem> findAllBy(Pageable pageable);
+
+    List<Problem> findAllByIdLessThan(Long afterId, Pageable pageable);
+
     List<Problem> findAllByUserId(Long id, Pageable pageable);
+
+    List<Problem> findAllByUserIdAndIdLessThan(Long id, Long afterId, Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE Problem p SET p.testCaseVersion = p.testCaseVersion + 1, " +
+            "p.testCaseCount = p.testCaseCount + 1 WHERE p.id = :id")
+    void addTestCase(Long id);
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package uk.ac.swansea.autograder.api.repositories;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import uk.ac.swansea.autograder.api.entities.SubmissionDeadLetter;
+
+public interface SubmissionDeadLetterRepository extends PagingAndSortingRepository<SubmissionDeadLetter, Long>,
+        CrudRepository<SubmissionDeadLetter, Long> {
+    boolean existsBySubmissionId(Long submissionId);
+
+    @Modifying
+    @Query("DELETE FROM SubmissionDeadLetter d WHERE d.problemId = :problemId")
+    int deleteAllByProblemId(Long problemId);
+}
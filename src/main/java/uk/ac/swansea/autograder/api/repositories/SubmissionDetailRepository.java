@@ -1,10 +1,35 @@
 package uk.ac.swansea.autograder.api.repositories;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import uk.ac.swansea.autograder.api.controllers.dto.SubmissionDetailDto;
 import uk.ac.swansea.autograder.api.entities.SubmissionDetail;
 
 import java.util.List;
 
 public interface SubmissionDetailRepository extends CrudRepository<SubmissionDetail, Long> {
+    // results with the input and expected output of their test cases, joined in the same query
+    String SELECT_DTO = "SELECT new uk.ac.swansea.autograder.api.controllers.dto.SubmissionDetailDto(" +
+            "d.id, d.submissionId, t.input, t.expectedOutput, d.actualOutput, d.testCaseIsPassed, d.skipped) " +
+            "FROM SubmissionDetail d JOIN d.testCase t";
+
+    // test cases are fetched in the same query rather than one by one
+    @Query("SELECT d FROM SubmissionDetail d JOIN FETCH d.testCase WHERE d.submissionId = :id ORDER BY d.id")
     List<SubmissionDetail> findAllBySubmissionId(Long id);
+
+    @Query(SELECT_DTO + " WHERE d.submissionId = :submissionId ORDER BY d.id")
+    List<SubmissionDetailDto> findDtosBySubmissionId(Long submissionId);
+
+    /**
+     * Details of the submission if it belongs to the user, otherwise none.
+     */
+    @Query(SELECT_DTO + " JOIN Submission s ON s.id = d.submissionId " +
+            "WHERE d.submissionId = :submissionId AND s.userId = :userId ORDER BY d.id")
+    List<SubmissionDetailDto> findDtosBySubmissionIdAndUserId(Long submissionId, Long userId);
+
+    @Modifying
+    @Query("DELETE FROM SubmissionDetail d WHERE d.submissionId IN " +
+            "(SELECT s.id FROM Submission s WHERE s.problemId = :problemId)")
+    void deleteAllByProblemId(Long problemId);
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package uk.ac.swansea.autograder.api.repositories;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import uk.ac.swansea.autograder.api.entities.SubmissionOutbox;
+
+import java.util.List;
+
+public interface SubmissionOutboxRepository extends CrudRepository<SubmissionOutbox, Long> {
+    /**
+     * Oldest rows, locked until the end of the transaction. Rows locked by another node are skipped,
+     * so relays on several nodes never pick the same row.
+     */
+    @Query(value = "SELECT * FROM submission_outbox ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<SubmissionOutbox> lockOldest(int limit);
+
+    @Modifying
+    @Query("DELETE FROM SubmissionOutbox o WHERE o.id IN :ids")
+    void deleteAllByIdIn(List<Long> ids);
+}
@@ -2,14 +2,110 @@ package uk.ac.swansea.autograder.api.repositories;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import uk.ac.swansea.autograder.api.controllers.dto.SubmissionBriefDto;
 import uk.ac.swansea.autograder.api.entities.Submission;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 public interface SubmissionRepository extends PagingAndSortingRepository<Submission, Long>, CrudRepository<Submission, Long> {
-    Page<Submission> findAllByProblemIdAndUserId(Long problemId, Long userId, Pageable pageable);
+    // listings select only the brief columns, never code or output
+    String SELECT_BRIEF = "SELECT new uk.ac.swansea.autograder.api.controllers.dto.SubmissionBriefDto(" +
+            "s.id, s.problemId, s.language, s.version, s.filename, s.userId, s.status, s.grade, s.skippedTestCases) FROM Submission s";
+
+    @Query(value = SELECT_BRIEF, countQuery = "SELECT count(s) FROM Submission s")
+    Page<SubmissionBriefDto> findAllBriefs(Pageable pageable);
+
+    @Query(value = SELECT_BRIEF + " WHERE s.problemId = :problemId",
+            countQuery = "SELECT count(s) FROM Submission s WHERE s.problemId = :problemId")
+    Page<SubmissionBriefDto> findBriefsByProblemId(Long problemId, Pageable pageable);
+
+    @Query(value = SELECT_BRIEF + " WHERE s.userId = :userId",
+            countQuery = "SELECT count(s) FROM Submission s WHERE s.userId = :userId")
+    Page<SubmissionBriefDto> findBriefsByUserId(Long userId, Pageable pageable);
+
+    @Query(value = SELECT_BRIEF + " WHERE s.problemId = :problemId AND s.userId = :userId",
+            countQuery = "SELECT count(s) FROM Submission s WHERE s.problemId = :problemId AND s.userId = :userId")
+    Page<SubmissionBriefDto> findBriefsByProblemIdAndUserId(Long problemId, Long userId, Pageable pageable);
+
+    /*
+     * Keyset pages: the submissions before afterId, newest first, read from the (..., id DESC) indexes
+     * however deep the page is. A Slice fetches one row more than the page instead of counting.
+     */
+    @Query(SELECT_BRIEF + " WHERE s.id < :afterId")
+    Slice<SubmissionBriefDto> findBriefsBefore(Long afterId, Pageable pageable);
+
+    @Query(SELECT_BRIEF + " WHERE s.problemId = :problemId AND s.id < :afterId")
+    Slice<SubmissionBriefDto> findBriefsByProblemIdBefore(Long problemId, Long afterId, Pageable pageable);
+
+    @Query(SELECT_BRIEF + " WHERE s.userId = :userId AND s.id < :afterId")
+    Slice<SubmissionBriefDto> findBriefsByUserIdBefore(Long userId, Long afterId, Pageable pageable);
+
+    @Query(SELECT_BRIEF + " WHERE s.problemId = :problemId AND s.userId = :userId AND s.id < :afterId")
+    Slice<SubmissionBriefDto> findBriefsByProblemIdAndUserIdBefore(Long problemId, Long userId, Long afterId,
+                                                                   Pageable pageable);
+
+    List<Submission> findAllByProblemId(Long problemId);
+
+    Optional<Submission> findFirstByProblemIdAndUserIdAndCodeHashAndTestCaseVersionOrderByIdDesc(
+            Long problemId, Long userId, String codeHash, Integer testCaseVersion);
+
+    @Modifying
+    @Query("UPDATE Submission s SET s.status = :status, s.output = null, s.grade = null, " +
+            "s.totalTestCases = :totalTestCases, s.processedTestCases = 0, s.correctTestCases = 0, " +
+            "s.skippedTestCases = 0, s.testCaseVersion = :testCaseVersion, " +
+            "s.leaseOwner = null, s.leaseExpiresAt = :leaseExpiresAt, s.gradingAttempts = 0 " +
+            "WHERE s.problemId = :problemId")
+    int resetAllByProblemId(Long problemId, Submission.Status status, Integer totalTestCases, Integer testCaseVersion,
+                            Instant leaseExpiresAt);
+
+    /**
+     * Take the lease of a submission that is still to be graded, unless another node holds an unexpired one.
+     * This node may take back a lease it kept while waiting to retry; that it is not grading the submission
+     * already is checked by SubmissionLeaseService. Quarantined submissions have no lease and are not taken.
+     */
+    @Modifying
+    @Query("UPDATE Submission s SET s.leaseOwner = :owner, s.leaseExpiresAt = :expiresAt " +
+            "WHERE s.id = :id AND s.status = :status AND s.leaseExpiresAt IS NOT NULL " +
+            "AND (s.leaseOwner IS NULL OR s.leaseOwner = :owner OR s.leaseExpiresAt < :now)")
+    int acquireLease(Long id, Submission.Status status, String owner, Instant expiresAt, Instant now);
+
+    /**
+     * Record the verdict of a submission graded under the lease of owner and clear the lease. Writes nothing
+     * if the lease was lost meanwhile, e.g. the submission was reset to be regraded or taken over by the sweeper.
+     */
+    @Modifying
+    @Query("UPDATE Submission s SET s.status = :status, s.output = :output, " +
+            "s.processedTestCases = :processedTestCases, s.correctTestCases = :correctTestCases, " +
+            "s.skippedTestCases = :skippedTestCases, s.grade = :grade, " +
+            "s.leaseOwner = null, s.leaseExpiresAt = null " +
+            "WHERE s.id = :id AND s.leaseOwner = :owner")
+    int recordVerdict(Long id, String owner, Submission.Status status, String output, Integer processedTestCases,
+                      Integer correctTestCases, Integer skippedTestCases, Integer grade);
+
+    @Modifying
+    @Query("UPDATE Submission s SET s.leaseExpiresAt = :expiresAt " +
+            "WHERE s.id IN :ids AND s.leaseOwner = :owner AND s.status = :status")
+    int renewLeases(Collection<Long> ids, String owner, Instant expiresAt, Submission.Status status);
+
+    /**
+     * Submissions in the given status whose lease expired, locked until the end of the transaction.
+     * Rows locked by another node are skipped.
+     */
+    @Query(value = "SELECT id FROM submissions WHERE status = :status AND lease_expires_at < :now " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockExpiredLeases(int status, Instant now, int limit);
 
-    Page<Submission> findAllByUserId(Long userId, Pageable pageable);
+    @Modifying
+    @Query("UPDATE Submission s SET s.gradingAttempts = s.gradingAttempts + 1 WHERE s.id = :id")
+    int incrementGradingAttempts(Long id);
 
-    Page<Submission> findAllByProblemId(Long problemId, Pageable pageable);
+    long countByStatusAndLeaseExpiresAtBefore(Submission.Status status, Instant now);
 }
\ No newline at end of file
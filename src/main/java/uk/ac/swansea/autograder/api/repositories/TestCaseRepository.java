@@ -12,5 +12,12 @@ public interface TestCaseRepository extends PagingAndSortingRepository<TestCase,
 
     List<TestCase> findAllByProblemId(Long id, Pageable pageable);
 
+    List<TestCase> findAllByProblemIdAndIdLessThan(Long id, Long afterId, Pageable pageable);
+
+    // List rather than Page, so no count query runs
+    List<TestCase> findAllBy(Pageable pageable);
+
+    List<TestCase> findAllByIdLessThan(Long afterId, Pageable pageable);
+
     int countAllByProblemId(Long problemId);
 }
\ No newline at end of file
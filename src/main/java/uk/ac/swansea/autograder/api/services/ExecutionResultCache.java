@@ -0,0 +1,215 @@
+package uk.ac.swansea.autograder.api.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteRequest;
+import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteResponse;
+import uk.ac.swansea.autograder.api.services.dto.piston.PistonRuntime;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Content addressed cache of Piston responses, keyed by a hash of language, version, files, stdin and limits.
+ *
+ * Lookups go to an in-process Caffeine cache first, then to Redis, which is shared by every instance.
+ * Nodes running without Redis set shared to false and only use the in-process cache.
+ * Keys are prefixed with a fingerprint of the installed runtimes, so installing or upgrading a runtime
+ * makes every older entry unreachable; those entries then expire through their TTL.
+ * Until the runtimes have been fetched once, the cache is bypassed.
+ */
+@Component
+@Slf4j
+public class ExecutionResultCache {
+    private static final String KEY_PREFIX = "execution:";
+
+    private final PistonClient pistonClient;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final boolean shared;
+    private final Duration redisTtl;
+    private final Cache<String, PistonExecuteResponse> localCache;
+    private final Counter localHits;
+    private final Counter redisHits;
+    private final Counter misses;
+
+    private volatile String runtimesFingerprint;
+
+    public ExecutionResultCache(PistonClient pistonClient,
+                                StringRedisTemplate redisTemplate,
+                                ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.execution.cache.enabled:true}") boolean enabled,
+                                @Value("${app.execution.cache.shared:true}") boolean shared,
+                                @Value("${app.execution.cache.localMaxSize:10000}") long localMaxSize,
+                                @Value("${app.execution.cache.localTtl:600000}") long localTtl,
+                                @Value("${app.execution.cache.redisTtl:86400000}") long redisTtl) {
+        this.pistonClient = pistonClient;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.shared = shared;
+        this.redisTtl = Duration.ofMillis(redisTtl);
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(Duration.ofMillis(localTtl))
+                .build();
+        this.localHits = requests(meterRegistry, "local");
+        this.redisHits = requests(meterRegistry, "redis");
+        this.misses = requests(meterRegistry, "miss");
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("execution.cache.requests")
+                .description("Execution result cache lookups by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param request Piston request
+     * @return cached response, or null on a miss or while the cache is not usable
+     */
+    public PistonExecuteResponse get(PistonExecuteRequest request) {
+        String key = key(request);
+        if (key == null) {
+            return null;
+        }
+        PistonExecuteResponse response = localCache.getIfPresent(key);
+        if (response != null) {
+            localHits.increment();
+            return response;
+        }
+        if (!shared) {
+            misses.increment();
+            return null;
+        }
+        try {
+            String json = redisTemplate.opsForValue().get(key);
+            if (json != null) {
+                response = objectMapper.readValue(json, PistonExecuteResponse.class);
+                localCache.put(key, response);
+                redisHits.increment();
+                return response;
+            }
+        } catch (Exception e) {
+            log.warn("Execution result cache lookup failed: {}", e.getMessage());
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Store a response unless it depends on more than the request, i.e. the run was killed (time or memory limit).
+     */
+    public void put(PistonExecuteRequest request, PistonExecuteResponse response) {
+        if (response == null || response.getRun() == null || response.getRun().getSignal() != null) {
+            return;
+        }
+        String key = key(request);
+        if (key == null) {
+            return;
+        }
+        // combined stdout and stderr, never read
+        response.getRun().setOutput(null);
+        localCache.put(key, response);
+        if (!shared) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(key, objectMapper.writeValueAsString(response), redisTtl);
+        } catch (Exception e) {
+            log.warn("Execution result cache store failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Fetch the installed runtimes and, when they changed, switch to a new key space.
+     */
+    @Scheduled(fixedDelayString = "${app.execution.cache.runtimesCheckInterval:300000}")
+    public void refreshRuntimes() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            String fingerprint = fingerprint(pistonClient.getRuntimes());
+            if (!fingerprint.equals(runtimesFingerprint)) {
+                if (runtimesFingerprint != null) {
+                    log.info("Piston runtimes changed, invalidating execution result cache");
+                }
+                runtimesFingerprint = fingerprint;
+                localCache.invalidateAll();
+            }
+        } catch (Exception e) {
+            log.warn("Could not refresh runtimes for the execution result cache: {}", e.getMessage());
+        }
+    }
+
+    private String key(PistonExecuteRequest request) {
+        String fingerprint = runtimesFingerprint;
+        if (!enabled || fingerprint == null) {
+            return null;
+        }
+        MessageDigest digest = sha256();
+        update(digest, request.getLanguage());
+        update(digest, request.getVersion());
+        update(digest, Objects.toString(request.getRunTimeout(), null));
+        if (request.getFiles() != null) {
+            for (PistonExecuteRequest.PistonFile file : request.getFiles()) {
+                update(digest, file.getName());
+                update(digest, file.getContent());
+            }
+        }
+        update(digest, request.getStdin());
+        return KEY_PREFIX + fingerprint + ":" + HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String fingerprint(List<PistonRuntime> runtimes) {
+        MessageDigest digest = sha256();
+        runtimes.stream()
+                .sorted(Comparator.comparing(PistonRuntime::getLanguage).thenComparing(PistonRuntime::getVersion))
+                .forEach(runtime -> {
+                    update(digest, runtime.getLanguage());
+                    update(digest, runtime.getVersion());
+                });
+        return HexFormat.of().formatHex(digest.digest(), 0, 8);
+    }
+
+    /**
+     * Length prefixed so that ("ab", "c") and ("a", "bc") hash differently.
+     */
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update((byte) 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) 1);
+        digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -4,6 +4,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
+import uk.ac.swansea.autograder.api.services.compare.OutputComparator;
+import uk.ac.swansea.autograder.api.services.compare.OutputComparators;
 import uk.ac.swansea.autograder.api.services.dto.ExecutionDto;
 import uk.ac.swansea.autograder.api.services.dto.ExecutionResultDto;
 import uk.ac.swansea.autograder.api.services.dto.RuntimeDto;
@@ -12,7 +14,8 @@ import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteResponse;
 import uk.ac.swansea.autograder.api.services.dto.piston.PistonRuntime;
 
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 /**
@@ -24,10 +27,13 @@ import java.util.stream.Collectors;
 public class ExecutionService {
     private final PistonClient pistonClient;
     private final ModelMapper modelMapper;
+    private final ExecutionResultCache executionResultCache;
 
-    public ExecutionService(PistonClient pistonClient, ModelMapper modelMapper) {
+    public ExecutionService(PistonClient pistonClient, ModelMapper modelMapper,
+                            ExecutionResultCache executionResultCache) {
         this.pistonClient = pistonClient;
         this.modelMapper = modelMapper;
+        this.executionResultCache = executionResultCache;
     }
 
     /**
@@ -39,25 +45,77 @@ public class ExecutionService {
      */
     public ExecutionResultDto submit(ExecutionDto dto) throws Exception {
         PistonExecuteResponse response = execute(dto);
-        
-        // Check for compilation/runtime errors
-        if (response.getRun().getStderr() != null && !response.getRun().getStderr().isBlank()) {
-            throw new Exception(response.getRun().getStderr());
+        checkCompiled(response);
+        return evaluate(response.getRun().getStdout(), response.getRun().getStderr(), dto.getExpectedOutput(),
+                OutputComparators.of(dto.getComparisonMode(), dto.getEpsilon()));
+    }
+
+    /**
+     * Non-blocking variant of {@link #submit(ExecutionDto)}.
+     *
+     * @param dto execution request with code, language, version, input, and expected output
+     * @return future completed with the result, or exceptionally if compilation or runtime error occurs
+     */
+    public CompletableFuture<ExecutionResultDto> submitAsync(ExecutionDto dto) {
+        return executeAsync(buildRequest(dto)).thenApply(response -> {
+            try {
+                checkCompiled(response);
+                return evaluate(response.getRun().getStdout(), response.getRun().getStderr(), dto.getExpectedOutput(),
+                        OutputComparators.of(dto.getComparisonMode(), dto.getEpsilon()));
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Compile the code without running any test case.
+     * Piston has no compile-only call, so the program runs once with empty stdin and a short run timeout,
+     * and only the compile stage of the response is looked at.
+     *
+     * @param dto execution parameters (language, version, code)
+     * @param runTimeout run stage timeout in milliseconds, null for Piston's default
+     * @throws Exception with the compiler output if compilation failed
+     */
+    public void compile(ExecutionDto dto, Integer runTimeout) throws Exception {
+        PistonExecuteRequest request = buildRequest(dto.toBuilder().input("").build());
+        request.setRunTimeout(runTimeout);
+        checkCompiled(execute(request));
+    }
+
+    /**
+     * @throws Exception with the compiler output if the compile stage failed
+     */
+    public void checkCompiled(PistonExecuteResponse response) throws Exception {
+        PistonExecuteResponse.RunResult compile = response.getCompile();
+        if (compile != null && compile.failed()) {
+            String stderr = compile.getStderr();
+            throw new Exception(stderr != null && !stderr.isBlank() ? stderr : compile.getStdout());
         }
+    }
 
-        String output = response.getRun().getStdout();
-        // Remove trailing newline from output
-        if (output != null && output.length() > 1) {
-            output = output.substring(0, output.length() - 1);
+    /**
+     * Compare the output of one run with the expected result.
+     *
+     * @param stdout         standard output of the run
+     * @param stderr         standard error of the run
+     * @param expectedOutput expected output of the test case
+     * @param comparator     how output and expected output are compared
+     * @return result indicating if output matches expected
+     * @throws Exception if the run wrote to stderr (compilation or runtime error)
+     */
+    public ExecutionResultDto evaluate(String stdout, String stderr, String expectedOutput,
+                                       OutputComparator comparator) throws Exception {
+        // Check for compilation/runtime errors
+        if (stderr != null && !stderr.isBlank()) {
+            throw new Exception(stderr);
         }
 
-        String expectedOutput = dto.getExpectedOutput();
-        
-        // Compare actual vs expected output
+        // Compare actual vs expected output in place, the stored output only loses its final newline
         return ExecutionResultDto.builder()
-                .output(output)
+                .output(OutputComparators.stripTrailingNewline(stdout))
                 .expectedOutput(expectedOutput)
-                .isValid(Objects.equals(output, expectedOutput))
+                .isValid(comparator.matches(stdout, expectedOutput))
                 .build();
     }
 
@@ -68,7 +126,11 @@ public class ExecutionService {
      * @return Piston execution response
      */
     private PistonExecuteResponse execute(ExecutionDto dto) {
-        PistonExecuteRequest request = PistonExecuteRequest.builder()
+        return execute(buildRequest(dto));
+    }
+
+    private PistonExecuteRequest buildRequest(ExecutionDto dto) {
+        return PistonExecuteRequest.builder()
                 .language(dto.getLanguage())
                 .version(dto.getVersion())
                 .files(List.of(
@@ -79,8 +141,33 @@ public class ExecutionService {
                 ))
                 .stdin(dto.getInput() != null ? dto.getInput() : "")
                 .build();
-        
-        return pistonClient.execute(request);
+    }
+
+    /**
+     * Send a prepared request to the Piston instance, unless an identical request was already run.
+     *
+     * @param request Piston request, possibly with several files
+     * @return Piston execution response
+     */
+    public PistonExecuteResponse execute(PistonExecuteRequest request) {
+        PistonExecuteResponse cached = executionResultCache.get(request);
+        if (cached != null) {
+            return cached;
+        }
+        PistonExecuteResponse response = pistonClient.execute(request);
+        executionResultCache.put(request, response);
+        return response;
+    }
+
+    private CompletableFuture<PistonExecuteResponse> executeAsync(PistonExecuteRequest request) {
+        PistonExecuteResponse cached = executionResultCache.get(request);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return pistonClient.executeAsync(request).thenApply(response -> {
+            executionResultCache.put(request, response);
+            return response;
+        });
     }
 
     /**
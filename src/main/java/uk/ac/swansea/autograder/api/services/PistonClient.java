@@ -1,63 +1,352 @@
 package uk.ac.swansea.autograder.api.services;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestClient;
+import uk.ac.swansea.autograder.api.services.guard.PistonGuard;
 import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteRequest;
 import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteResponse;
 import uk.ac.swansea.autograder.api.services.dto.piston.PistonRuntime;
+import uk.ac.swansea.autograder.exceptions.ExecutionUnavailableException;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * HTTP client for the Piston execution engine.
+ *
+ * Both the blocking client (RestClient) and the non-blocking client share the same pool sizing,
+ * timeouts and keep-alive settings, so a hung Piston job can never hold a worker or a connection forever.
+ *
+ * Several Piston endpoints can be configured. Each request goes to the healthy node with the fewest
+ * outstanding requests. Nodes failing the health probe on /api/v2/runtimes are ejected and, once they
+ * pass again, readmitted with a weight that ramps up over the slow start window.
+ *
+ * Execute requests are admitted by the {@link PistonGuard}, which sheds load while Piston is failing or saturated.
+ */
 @Service
 @Slf4j
 public class PistonClient {
-    @Value("${piston.url}")
-    private String pistonApiUrl;
+    private static final String EXECUTE_PATH = "/api/v2/execute";
+    private static final String RUNTIMES_PATH = "/api/v2/runtimes";
 
-    private RestClient restClient;
+    @Value("${piston.urls:${piston.url}}")
+    private List<String> pistonApiUrls;
+
+    @Value("${piston.pool.maxTotal:64}")
+    private int maxConnTotal;
+
+    @Value("${piston.pool.maxPerRoute:32}")
+    private int maxConnPerRoute;
+
+    @Value("${piston.timeouts.connect:2000}")
+    private long connectTimeout;
+
+    @Value("${piston.timeouts.socket:30000}")
+    private long socketTimeout;
+
+    @Value("${piston.timeouts.response:30000}")
+    private long responseTimeout;
+
+    @Value("${piston.timeouts.connectionRequest:5000}")
+    private long connectionRequestTimeout;
+
+    @Value("${piston.keepAlive:30000}")
+    private long keepAlive;
+
+    @Value("${piston.health.unhealthyThreshold:2}")
+    private int unhealthyThreshold;
+
+    @Value("${piston.health.healthyThreshold:2}")
+    private int healthyThreshold;
+
+    @Value("${piston.health.slowStart:30000}")
+    private long slowStart;
+
+    @Value("${piston.response.maxFieldBytes:65536}")
+    private int maxFieldBytes;
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final PistonGuard pistonGuard;
+    private final AtomicInteger rotation = new AtomicInteger();
+    private final DistributionSummary receivedBytes;
+    private final DistributionSummary retainedBytes;
+    private final Counter truncatedResponses;
+
+    private CloseableHttpClient httpClient;
+    private CloseableHttpAsyncClient asyncClient;
+    private List<PistonNode> nodes;
+
+    public PistonClient(ObjectMapper objectMapper, MeterRegistry meterRegistry, PistonGuard pistonGuard) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.pistonGuard = pistonGuard;
+        this.receivedBytes = DistributionSummary.builder("piston.response.received")
+                .description("Size of Piston execute response bodies")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.retainedBytes = DistributionSummary.builder("piston.response.retained")
+                .description("Memory held while decoding one Piston execute response, bounded by the field cap")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.truncatedResponses = Counter.builder("piston.response.truncated")
+                .description("Piston execute responses with a field cut at the cap")
+                .register(meterRegistry);
+    }
 
     @PostConstruct
     public void initRestClient() {
-        // Use Apache HttpClient5 for more predictable HTTP behavior
-        CloseableHttpClient httpClient = HttpClients.createDefault();
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                .setSocketTimeout(Timeout.ofMilliseconds(socketTimeout))
+                .build();
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeout))
+                .setResponseTimeout(Timeout.ofMilliseconds(responseTimeout))
+                .setConnectionKeepAlive(TimeValue.ofMilliseconds(keepAlive))
+                .build();
+
+        // Use Apache HttpClient5 with a sized pool for more predictable HTTP behavior
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(maxConnTotal)
+                        .setMaxConnPerRoute(maxConnPerRoute)
+                        .setDefaultConnectionConfig(connectionConfig)
+                        .build())
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(TimeValue.ofMilliseconds(keepAlive))
+                .build();
         HttpComponentsClientHttpRequestFactory requestFactory =
                 new HttpComponentsClientHttpRequestFactory(httpClient);
 
-        this.restClient = RestClient.builder()
-                .baseUrl(pistonApiUrl)
-                .requestFactory(requestFactory)
+        this.nodes = pistonApiUrls.stream()
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(url -> new PistonNode(url, RestClient.builder()
+                        .baseUrl(url)
+                        .requestFactory(requestFactory)
+                        .build(), meterRegistry))
+                .toList();
+
+        this.asyncClient = HttpAsyncClients.custom()
+                .setConnectionManager(PoolingAsyncClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(maxConnTotal)
+                        .setMaxConnPerRoute(maxConnPerRoute)
+                        .setDefaultConnectionConfig(connectionConfig)
+                        .build())
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(TimeValue.ofMilliseconds(keepAlive))
                 .build();
+        this.asyncClient.start();
 
-        log.info("RestClient built with Apache HttpClient5, URL: {}", pistonApiUrl);
+        log.info("Piston clients built with Apache HttpClient5, URLs: {}, pool: {}/{} per route",
+                nodes.stream().map(PistonNode::getUrl).toList(), maxConnTotal, maxConnPerRoute);
     }
 
+    @PreDestroy
+    public void close() {
+        asyncClient.close(CloseMode.GRACEFUL);
+        httpClient.close(CloseMode.GRACEFUL);
+    }
+
+    /**
+     * @throws ExecutionUnavailableException if Piston is unreachable, overloaded or failing (5xx)
+     * @throws RuntimeException              if Piston rejected the request (4xx)
+     */
     public PistonExecuteResponse execute(PistonExecuteRequest request) {
+        long admitted = pistonGuard.acquire();
+        PistonNode node = selectNode();
+        long start = System.nanoTime();
+        node.begin();
         try {
-            return restClient.post()
-                    .uri("/api/v2/execute")
+            PistonExecuteResponse response = node.getRestClient().post()
+                    .uri(EXECUTE_PATH)
                     .accept(MediaType.APPLICATION_JSON)
                     .contentType(MediaType.APPLICATION_JSON)
                     .body(request)
-                    .retrieve()
-                    .body(PistonExecuteResponse.class);
-        } catch (Exception e) {
-            log.error("Failed to execute code via Piston: {}", e.getMessage());
+                    .exchange((httpRequest, httpResponse) -> decode(httpResponse.getStatusCode(), httpResponse.getBody()));
+            node.complete(start, false);
+            releaseAnswered(admitted, request, response);
+            return response;
+        } catch (HttpClientErrorException e) {
+            node.complete(start, true);
+            pistonGuard.release(admitted, false);
+            log.error("Piston {} rejected the request: {}", node.getUrl(), e.getMessage());
             throw new RuntimeException("Code execution failed: " + e.getMessage(), e);
+        } catch (Exception e) {
+            node.complete(start, true);
+            pistonGuard.release(admitted, true);
+            log.error("Failed to execute code via Piston {}: {}", node.getUrl(), e.getMessage());
+            throw new ExecutionUnavailableException("Code execution failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #execute(PistonExecuteRequest)}.
+     * No thread is held while the request is in flight; the future completes on the client's I/O thread.
+     * The calling thread may wait for admission by the {@link PistonGuard} before the request is sent.
+     *
+     * @param request Piston request
+     * @return future completed with the response, or exceptionally with an ExecutionUnavailableException
+     * for infrastructure failures and a RuntimeException when Piston rejected the request
+     */
+    public CompletableFuture<PistonExecuteResponse> executeAsync(PistonExecuteRequest request) {
+        // built before admission, a request that cannot be sent never holds a slot
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(request);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(new RuntimeException("Code execution failed: " + e.getMessage(), e));
+        }
+        long admitted;
+        try {
+            admitted = pistonGuard.acquire();
+        } catch (ExecutionUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        PistonNode node = selectNode();
+        SimpleHttpRequest httpRequest = SimpleRequestBuilder.post(node.getUrl() + EXECUTE_PATH)
+                .setHeader("Accept", MediaType.APPLICATION_JSON_VALUE)
+                .setBody(body, ContentType.APPLICATION_JSON)
+                .build();
+
+        CompletableFuture<PistonExecuteResponse> result = new CompletableFuture<>();
+        long start = System.nanoTime();
+        node.begin();
+        result.whenComplete((response, e) -> {
+            node.complete(start, e != null);
+            if (response != null) {
+                releaseAnswered(admitted, request, response);
+            } else {
+                pistonGuard.release(admitted, e instanceof ExecutionUnavailableException);
+            }
+        });
+        PistonResponseConsumer consumer = new PistonResponseConsumer(maxFieldBytes);
+        try {
+            asyncClient.execute(SimpleRequestProducer.create(httpRequest), consumer, new FutureCallback<PistonExecuteResponse>() {
+                @Override
+                public void completed(PistonExecuteResponse response) {
+                    record(consumer.getDecoder());
+                    int code = consumer.getStatus();
+                    if (code >= 400 && code < 500) {
+                        log.error("Piston {} rejected the request: HTTP {}", node.getUrl(), code);
+                        result.completeExceptionally(new RuntimeException(
+                                "Code execution failed: HTTP " + code + " " + consumer.getDecoder().getMessage()));
+                        return;
+                    }
+                    if (!consumer.isSuccess()) {
+                        failed(new IOException("HTTP " + code + " " + consumer.getDecoder().getMessage()));
+                        return;
+                    }
+                    if (response == null) {
+                        failed(consumer.getError());
+                        return;
+                    }
+                    result.complete(response);
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    log.error("Failed to execute code via Piston {}: {}", node.getUrl(), e.getMessage());
+                    result.completeExceptionally(new ExecutionUnavailableException("Code execution failed: " + e.getMessage(), e));
+                }
+
+                @Override
+                public void cancelled() {
+                    result.cancel(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            // never sent, e.g. the client is shutting down; completing the future frees the slot
+            log.error("Failed to send the request to Piston {}: {}", node.getUrl(), e.getMessage());
+            result.completeExceptionally(new ExecutionUnavailableException("Code execution failed: " + e.getMessage(), e));
+        }
+        return result;
+    }
+
+    /**
+     * Only a run that finished on its own, within Piston's default run timeout, tells how loaded Piston is.
+     * A stage killed by a timeout or signal, e.g. an infinite loop, or a request with its own run timeout,
+     * e.g. a batch of every test case, takes as long as the code makes it and is not a latency sample.
+     */
+    private void releaseAnswered(long admitted, PistonExecuteRequest request, PistonExecuteResponse response) {
+        boolean killed = (response.getCompile() != null && response.getCompile().getSignal() != null)
+                || (response.getRun() != null && response.getRun().getSignal() != null);
+        if (killed || request.getRunTimeout() != null) {
+            pistonGuard.releaseUntimed();
+        } else {
+            pistonGuard.release(admitted, false);
+        }
+    }
+
+    /**
+     * Decode a response body as it is read, keeping at most maxFieldBytes of each field.
+     */
+    private PistonExecuteResponse decode(HttpStatusCode status, InputStream body) throws IOException {
+        PistonResponseDecoder decoder = new PistonResponseDecoder(maxFieldBytes);
+        if (status.is2xxSuccessful()) {
+            decoder.read(body);
+            record(decoder);
+            return decoder.finish();
+        }
+        try {
+            decoder.read(body);
+        } catch (IOException e) {
+            // error bodies are not always JSON, the status is what matters
+        }
+        if (status.is4xxClientError()) {
+            throw new HttpClientErrorException(status, String.valueOf(decoder.getMessage()));
+        }
+        throw new HttpServerErrorException(status, String.valueOf(decoder.getMessage()));
+    }
+
+    private void record(PistonResponseDecoder decoder) {
+        receivedBytes.record(decoder.getReceivedBytes());
+        retainedBytes.record(decoder.getRetainedBytes());
+        if (decoder.isTruncated()) {
+            truncatedResponses.increment();
         }
     }
 
     public List<PistonRuntime> getRuntimes() {
         try {
-            PistonRuntime[] runtimes = restClient.get()
-                    .uri("/api/v2/runtimes")
+            PistonRuntime[] runtimes = selectNode().getRestClient().get()
+                    .uri(RUNTIMES_PATH)
                     .retrieve()
                     .body(PistonRuntime[].class);
 
@@ -69,11 +358,62 @@ public class PistonClient {
             log.info("Retrieved {} available runtimes from Piston", runtimes.length);
             return Arrays.asList(runtimes);
         } catch (Exception e) {
-            if (e instanceof org.springframework.web.client.HttpClientErrorException) {
-                log.error("Piston API Error: {} - {}", ((org.springframework.web.client.HttpClientErrorException) e).getStatusCode(), ((org.springframework.web.client.HttpClientErrorException) e).getResponseBodyAsString());
+            if (e instanceof HttpClientErrorException) {
+                log.error("Piston API Error: {} - {}", ((HttpClientErrorException) e).getStatusCode(), ((HttpClientErrorException) e).getResponseBodyAsString());
             }
             log.error("Failed to fetch runtimes from Piston: {}", e.getMessage());
             throw new RuntimeException("Failed to fetch available runtimes: " + e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Probe every node and eject or readmit it based on consecutive probe results.
+     */
+    @Scheduled(fixedDelayString = "${piston.health.interval:10000}")
+    public void probeNodes() {
+        for (PistonNode node : nodes) {
+            boolean wasHealthy = node.isHealthy();
+            try {
+                node.getRestClient().get()
+                        .uri(RUNTIMES_PATH)
+                        .retrieve()
+                        .toBodilessEntity();
+                node.probeSucceeded(healthyThreshold, System.currentTimeMillis());
+            } catch (Exception e) {
+                log.debug("Piston health probe failed for {}: {}", node.getUrl(), e.getMessage());
+                node.probeFailed(unhealthyThreshold);
+            }
+            if (wasHealthy != node.isHealthy()) {
+                log.warn("Piston node {} is now {}", node.getUrl(), node.isHealthy() ? "readmitted" : "ejected");
+            }
+        }
+    }
+
+    /**
+     * Least outstanding requests among healthy nodes, scanning from a rotating offset so ties are spread.
+     * If every node is ejected, all of them are candidates rather than failing every request.
+     */
+    private PistonNode selectNode() {
+        int size = nodes.size();
+        if (size == 1) {
+            return nodes.get(0);
+        }
+        boolean anyHealthy = nodes.stream().anyMatch(PistonNode::isHealthy);
+        long now = System.currentTimeMillis();
+        int offset = Math.floorMod(rotation.getAndIncrement(), size);
+        PistonNode best = null;
+        double bestLoad = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            PistonNode node = nodes.get((offset + i) % size);
+            if (anyHealthy && !node.isHealthy()) {
+                continue;
+            }
+            double load = node.load(now, slowStart);
+            if (load < bestLoad) {
+                best = node;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,101 @@
+package uk.ac.swansea.autograder.api.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import org.springframework.web.client.RestClient;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One Piston endpoint behind {@link PistonClient}, with its load, health state and counters.
+ * Health state is only changed by the probe thread; load counters are updated by request threads.
+ */
+class PistonNode {
+    private static final double MIN_WEIGHT = 0.1;
+
+    @Getter
+    private final String url;
+    @Getter
+    private final RestClient restClient;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Timer latency;
+    private final Counter errors;
+
+    @Getter
+    private volatile boolean healthy = true;
+    // when the node was readmitted after an ejection, 0 while it is at full weight
+    private volatile long readmittedAt = 0;
+    private int consecutiveFailures = 0;
+    private int consecutiveSuccesses = 0;
+
+    PistonNode(String url, RestClient restClient, MeterRegistry meterRegistry) {
+        this.url = url;
+        this.restClient = restClient;
+        Gauge.builder("piston.node.in_flight", inFlight, AtomicInteger::get)
+                .description("Piston requests in flight")
+                .tag("node", url)
+                .register(meterRegistry);
+        Gauge.builder("piston.node.healthy", this, node -> node.isHealthy() ? 1 : 0)
+                .description("1 when the node passes health probes, 0 when it is ejected")
+                .tag("node", url)
+                .register(meterRegistry);
+        this.latency = Timer.builder("piston.node.latency")
+                .description("Piston execute latency")
+                .tag("node", url)
+                .register(meterRegistry);
+        this.errors = Counter.builder("piston.node.errors")
+                .description("Failed Piston requests")
+                .tag("node", url)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Load used for least-outstanding-requests routing. A readmitted node ramps its weight up
+     * over the slow start window, so it receives a growing share of traffic instead of all of it at once.
+     */
+    double load(long now, long slowStartMillis) {
+        double weight = 1.0;
+        long since = readmittedAt;
+        if (since > 0 && slowStartMillis > 0 && now - since < slowStartMillis) {
+            weight = Math.max(MIN_WEIGHT, (double) (now - since) / slowStartMillis);
+        }
+        return (inFlight.get() + 1) / weight;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    void begin() {
+        inFlight.incrementAndGet();
+    }
+
+    void complete(long startNanos, boolean failed) {
+        inFlight.decrementAndGet();
+        latency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    void probeSucceeded(int healthyThreshold, long now) {
+        consecutiveFailures = 0;
+        consecutiveSuccesses++;
+        if (!healthy && consecutiveSuccesses >= healthyThreshold) {
+            readmittedAt = now;
+            healthy = true;
+        }
+    }
+
+    void probeFailed(int unhealthyThreshold) {
+        consecutiveSuccesses = 0;
+        consecutiveFailures++;
+        if (healthy && consecutiveFailures >= unhealthyThreshold) {
+            healthy = false;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package uk.ac.swansea.autograder.api.services;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.nio.entity.AbstractBinResponseConsumer;
+import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Feeds the body of an async Piston response to a {@link PistonResponseDecoder} chunk by chunk,
+ * instead of buffering it whole like SimpleResponseConsumer.
+ * The result is null if the body could not be decoded; check {@link #getStatus()} and {@link #getError()}.
+ */
+class PistonResponseConsumer extends AbstractBinResponseConsumer<PistonExecuteResponse> {
+    private static final int CHUNK_SIZE = 8192;
+
+    private final PistonResponseDecoder decoder;
+    private int status;
+    private IOException error;
+
+    PistonResponseConsumer(int maxFieldBytes) {
+        this.decoder = new PistonResponseDecoder(maxFieldBytes);
+    }
+
+    @Override
+    protected void start(HttpResponse response, ContentType contentType) {
+        status = response.getCode();
+    }
+
+    @Override
+    protected int capacityIncrement() {
+        return CHUNK_SIZE;
+    }
+
+    @Override
+    protected void data(ByteBuffer src, boolean endOfStream) throws IOException {
+        if (error != null) {
+            return;
+        }
+        try {
+            decoder.feed(src);
+        } catch (IOException e) {
+            if (isSuccess()) {
+                throw e;
+            }
+            // error bodies are not always JSON, the status is what matters
+            error = e;
+        }
+    }
+
+    @Override
+    protected PistonExecuteResponse buildResult() {
+        try {
+            return error == null ? decoder.finish() : null;
+        } catch (IOException e) {
+            error = e;
+            return null;
+        }
+    }
+
+    @Override
+    public void releaseResources() {
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    boolean isSuccess() {
+        return status >= 200 && status < 300;
+    }
+
+    IOException getError() {
+        return error;
+    }
+
+    PistonResponseDecoder getDecoder() {
+        return decoder;
+    }
+}
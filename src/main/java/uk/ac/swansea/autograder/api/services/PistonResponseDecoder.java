@@ -0,0 +1,408 @@
+package uk.ac.swansea.autograder.api.services;
+
+import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental decoder for Piston execute responses.
+ *
+ * Bytes are pushed as they arrive. Only the fields the autograder reads are kept, each capped at maxFieldBytes
+ * and marked when truncated. Everything else, including the combined "output" field Piston sends next to
+ * stdout and stderr, is skipped without being buffered. Memory per response is therefore bounded by a few
+ * capped buffers, whatever the student's program printed.
+ *
+ * Error responses ({"message": "..."}) decode to an empty response with {@link #getMessage()} set.
+ */
+class PistonResponseDecoder {
+    static final String TRUNCATED_MARKER = "\n[output truncated]";
+
+    private static final int MAX_DEPTH = 64;
+    private static final int MAX_KEY_BYTES = 64;
+    private static final int MAX_LITERAL_LENGTH = 32;
+
+    private enum State {VALUE, STRING, ESCAPE, UNICODE, LITERAL}
+
+    private final int maxFieldBytes;
+    private final PistonExecuteResponse response = new PistonExecuteResponse();
+
+    private State state = State.VALUE;
+    // true for objects, false for arrays
+    private final boolean[] containers = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean expectKey;
+    private boolean complete;
+
+    // key being read at the top level ("run", "compile", ...) and inside a stage ("stdout", ...)
+    private String topKey;
+    private String stageKey;
+    private PistonExecuteResponse.RunResult stage;
+
+    private final CappedBuffer keyBuffer = new CappedBuffer(MAX_KEY_BYTES);
+    private boolean readingKey;
+    // current string value, null when it is skipped
+    private CappedBuffer value;
+    private int unicode;
+    private int unicodeDigits;
+    private int pendingHighSurrogate = -1;
+    private final StringBuilder literal = new StringBuilder();
+
+    private String message;
+    private long receivedBytes;
+    private long retainedBytes;
+    private boolean truncated;
+
+    PistonResponseDecoder(int maxFieldBytes) {
+        this.maxFieldBytes = maxFieldBytes;
+    }
+
+    void read(InputStream in) throws IOException {
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            feed(chunk, 0, read);
+        }
+    }
+
+    void feed(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            next(src.get() & 0xFF);
+        }
+    }
+
+    void feed(byte[] bytes, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            next(bytes[i] & 0xFF);
+        }
+    }
+
+    /**
+     * @return the decoded response
+     * @throws IOException if the body ended before the top level object was closed
+     */
+    PistonExecuteResponse finish() throws IOException {
+        if (!complete) {
+            throw new IOException("Incomplete Piston response after " + receivedBytes + " bytes");
+        }
+        return response;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    /**
+     * @return bytes held in field buffers, the memory this response needed beyond the fixed parser state
+     */
+    long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    private void next(int b) throws IOException {
+        receivedBytes++;
+        switch (state) {
+            case VALUE -> structural(b);
+            case STRING -> string(b);
+            case ESCAPE -> escape(b);
+            case UNICODE -> unicode(b);
+            case LITERAL -> {
+                if (b == ',' || b == '}' || b == ']' || isWhitespace(b)) {
+                    endLiteral();
+                    state = State.VALUE;
+                    structural(b);
+                } else if (literal.length() < MAX_LITERAL_LENGTH) {
+                    literal.append((char) b);
+                }
+            }
+        }
+    }
+
+    private void structural(int b) throws IOException {
+        if (isWhitespace(b) || complete) {
+            return;
+        }
+        switch (b) {
+            case '{' -> {
+                push(true);
+                if (depth == 2 && isStageKey(topKey)) {
+                    stage = new PistonExecuteResponse.RunResult();
+                    if ("run".equals(topKey)) {
+                        response.setRun(stage);
+                    } else {
+                        response.setCompile(stage);
+                    }
+                }
+            }
+            case '[' -> push(false);
+            case '}', ']' -> pop();
+            case ':' -> expectKey = false;
+            case ',' -> expectKey = depth > 0 && containers[depth - 1];
+            case '"' -> {
+                readingKey = expectKey;
+                if (readingKey) {
+                    keyBuffer.reset();
+                } else {
+                    value = capturesString() ? new CappedBuffer(maxFieldBytes) : null;
+                }
+                state = State.STRING;
+            }
+            default -> {
+                literal.setLength(0);
+                literal.append((char) b);
+                state = State.LITERAL;
+            }
+        }
+    }
+
+    private void push(boolean object) throws IOException {
+        if (depth == MAX_DEPTH) {
+            throw new IOException("Piston response nested too deeply");
+        }
+        containers[depth++] = object;
+        expectKey = object;
+    }
+
+    private void pop() throws IOException {
+        if (depth == 0) {
+            throw new IOException("Unbalanced Piston response");
+        }
+        depth--;
+        expectKey = false;
+        if (depth == 1) {
+            stage = null;
+            stageKey = null;
+        } else if (depth == 0) {
+            complete = true;
+        }
+    }
+
+    private void string(int b) {
+        if (b == '"') {
+            endString();
+        } else if (b == '\\') {
+            state = State.ESCAPE;
+        } else {
+            flushPendingSurrogate();
+            write(b);
+        }
+    }
+
+    private void escape(int b) throws IOException {
+        state = State.STRING;
+        int unescaped;
+        switch (b) {
+            case '"', '\\', '/' -> unescaped = b;
+            case 'b' -> unescaped = '\b';
+            case 'f' -> unescaped = '\f';
+            case 'n' -> unescaped = '\n';
+            case 'r' -> unescaped = '\r';
+            case 't' -> unescaped = '\t';
+            case 'u' -> {
+                unicode = 0;
+                unicodeDigits = 0;
+                state = State.UNICODE;
+                return;
+            }
+            default -> throw new IOException("Invalid escape in Piston response");
+        }
+        flushPendingSurrogate();
+        write(unescaped);
+    }
+
+    private void unicode(int b) throws IOException {
+        int digit = Character.digit(b, 16);
+        if (digit < 0) {
+            throw new IOException("Invalid unicode escape in Piston response");
+        }
+        unicode = unicode * 16 + digit;
+        if (++unicodeDigits < 4) {
+            return;
+        }
+        state = State.STRING;
+        if (pendingHighSurrogate >= 0 && Character.isLowSurrogate((char) unicode)) {
+            writeCodePoint(Character.toCodePoint((char) pendingHighSurrogate, (char) unicode));
+            pendingHighSurrogate = -1;
+            return;
+        }
+        flushPendingSurrogate();
+        if (Character.isHighSurrogate((char) unicode)) {
+            pendingHighSurrogate = unicode;
+        } else {
+            writeCodePoint(Character.isLowSurrogate((char) unicode) ? 0xFFFD : unicode);
+        }
+    }
+
+    private void flushPendingSurrogate() {
+        if (pendingHighSurrogate >= 0) {
+            pendingHighSurrogate = -1;
+            writeCodePoint(0xFFFD);
+        }
+    }
+
+    private void writeCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            write(codePoint);
+        } else if (codePoint < 0x800) {
+            write(0xC0 | (codePoint >> 6));
+            write(0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            write(0xE0 | (codePoint >> 12));
+            write(0x80 | ((codePoint >> 6) & 0x3F));
+            write(0x80 | (codePoint & 0x3F));
+        } else {
+            write(0xF0 | (codePoint >> 18));
+            write(0x80 | ((codePoint >> 12) & 0x3F));
+            write(0x80 | ((codePoint >> 6) & 0x3F));
+            write(0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    private void write(int b) {
+        if (readingKey) {
+            keyBuffer.write(b);
+        } else if (value != null) {
+            value.write(b);
+        }
+    }
+
+    private void endString() {
+        flushPendingSurrogate();
+        state = State.VALUE;
+        if (readingKey) {
+            readingKey = false;
+            String key = keyBuffer.asString();
+            if (depth == 1) {
+                topKey = key;
+            } else if (depth == 2) {
+                stageKey = key;
+            }
+            return;
+        }
+        if (value == null) {
+            return;
+        }
+        retainedBytes += value.capacity();
+        truncated |= value.truncated;
+        String text = value.asString();
+        value = null;
+        if (depth == 1) {
+            switch (topKey) {
+                case "language" -> response.setLanguage(text);
+                case "version" -> response.setVersion(text);
+                case "message" -> message = text;
+                default -> {
+                }
+            }
+        } else {
+            switch (stageKey) {
+                case "stdout" -> stage.setStdout(text);
+                case "stderr" -> stage.setStderr(text);
+                case "signal" -> stage.setSignal(text);
+                default -> {
+                }
+            }
+        }
+    }
+
+    private void endLiteral() throws IOException {
+        if (stage != null && depth == 2 && "code".equals(stageKey)) {
+            String text = literal.toString();
+            if (!"null".equals(text)) {
+                try {
+                    stage.setCode((int) Double.parseDouble(text));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid exit code in Piston response: " + text);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the string value about to be read is a field that is kept
+     */
+    private boolean capturesString() {
+        if (depth == 1 && containers[0]) {
+            return "language".equals(topKey) || "version".equals(topKey) || "message".equals(topKey);
+        }
+        return depth == 2 && stage != null
+                && ("stdout".equals(stageKey) || "stderr".equals(stageKey) || "signal".equals(stageKey));
+    }
+
+    private static boolean isStageKey(String key) {
+        return "run".equals(key) || "compile".equals(key);
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    /**
+     * UTF-8 bytes of one string, growing up to a cap and dropping the rest.
+     */
+    private static final class CappedBuffer {
+        private final int cap;
+        private byte[] bytes;
+        private int length;
+        private boolean truncated;
+
+        CappedBuffer(int cap) {
+            this.cap = Math.max(0, cap);
+            this.bytes = new byte[Math.min(this.cap, 256)];
+        }
+
+        void reset() {
+            length = 0;
+            truncated = false;
+        }
+
+        void write(int b) {
+            if (length == cap) {
+                truncated = true;
+                return;
+            }
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.min(cap, bytes.length * 2));
+            }
+            bytes[length++] = (byte) b;
+        }
+
+        int capacity() {
+            return bytes.length;
+        }
+
+        String asString() {
+            if (!truncated) {
+                return new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            return new String(bytes, 0, completeLength(), StandardCharsets.UTF_8) + TRUNCATED_MARKER;
+        }
+
+        /**
+         * Length without a multi-byte character cut in half by the cap.
+         */
+        private int completeLength() {
+            int lead = length - 1;
+            while (lead >= 0 && length - lead <= 4 && (bytes[lead] & 0xC0) == 0x80) {
+                lead--;
+            }
+            if (lead < 0) {
+                return length;
+            }
+            int b = bytes[lead] & 0xFF;
+            int expected = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+            return length - lead < expected ? lead : length;
+        }
+    }
+}
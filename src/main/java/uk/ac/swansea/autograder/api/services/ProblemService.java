@@ -2,12 +2,14 @@ package uk.ac.swansea.autograder.api.services;
 
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import uk.ac.swansea.autograder.api.controllers.dto.ProblemDto;
 import uk.ac.swansea.autograder.api.entities.Problem;
 import uk.ac.swansea.autograder.api.repositories.ProblemRepository;
 import uk.ac.swansea.autograder.exceptions.ResourceNotFoundException;
 
 import java.util.List;
+import java.util.Objects;
 
 @Service
 public class ProblemService {
@@ -23,6 +25,20 @@ public class ProblemService {
         problem.setDescription(problemDto.getDescription());
         problem.setStatus(Problem.Status.ACTIVE);
         problem.setUserId(problemDto.getUserId());
+        if (problemDto.getGradingPolicy() != null) {
+            problem.setGradingPolicy(problemDto.getGradingPolicy());
+        }
+        problem.setMaxFailures(problemDto.getMaxFailures());
+        if (problemDto.getComparisonMode() != null) {
+            problem.setComparisonMode(problemDto.getComparisonMode());
+        }
+        problem.setEpsilon(problemDto.getEpsilon());
+        if (problemDto.getSchedulingWeight() != null) {
+            problem.setSchedulingWeight(problemDto.getSchedulingWeight());
+        }
+        if (problemDto.getAssessment() != null) {
+            problem.setAssessment(problemDto.getAssessment());
+        }
         return problemRepository.save(problem);
     }
 
@@ -31,12 +47,32 @@ public class ProblemService {
                 .orElseThrow(ResourceNotFoundException::new);
     }
 
-    public List<Problem> getProblemsByuserId(Long id, Pageable pageable) {
+    /**
+     * @param afterId id of the last problem of the previous page, null to page by offset
+     */
+    public List<Problem> getProblemsByuserId(Long id, Long afterId, Pageable pageable) {
+        if (afterId != null) {
+            return problemRepository.findAllByUserIdAndIdLessThan(id, afterId, pageable);
+        }
         return problemRepository.findAllByUserId(id, pageable);
     }
 
-    public List<Problem> getProblems(Pageable pageable) {
-        return problemRepository.findAll(pageable).toList();
+    /**
+     * @param afterId id of the last problem of the previous page, null to page by offset
+     */
+    public List<Problem> getProblems(Long afterId, Pageable pageable) {
+        if (afterId != null) {
+            return problemRepository.findAllByIdLessThan(afterId, pageable);
+        }
+        return problemRepository.findAllBy(pageable);
+    }
+
+    /**
+     * Count a new test case and mark the problem's test case set as changed, so earlier verdicts are no longer reused.
+     */
+    @Transactional
+    public void addTestCase(Long id) {
+        problemRepository.addTestCase(id);
     }
 
     public Problem updateProblem(Long id, ProblemDto problemDto) throws ResourceNotFoundException {
@@ -44,6 +80,29 @@ public class ProblemService {
         problem.setTitle(problemDto.getTitle());
         problem.setDescription(problemDto.getDescription());
         problem.setStatus(problemDto.getStatus());
+        int failureBudget = problem.failureBudget();
+        Problem.ComparisonMode comparisonMode = problem.getComparisonMode();
+        Double epsilon = problem.getEpsilon();
+        if (problemDto.getGradingPolicy() != null) {
+            problem.setGradingPolicy(problemDto.getGradingPolicy());
+        }
+        problem.setMaxFailures(problemDto.getMaxFailures());
+        if (problemDto.getComparisonMode() != null) {
+            problem.setComparisonMode(problemDto.getComparisonMode());
+        }
+        problem.setEpsilon(problemDto.getEpsilon());
+        if (problemDto.getSchedulingWeight() != null) {
+            problem.setSchedulingWeight(problemDto.getSchedulingWeight());
+        }
+        if (problemDto.getAssessment() != null) {
+            problem.setAssessment(problemDto.getAssessment());
+        }
+        if (failureBudget != problem.failureBudget()
+                || comparisonMode != problem.getComparisonMode()
+                || !Objects.equals(epsilon, problem.getEpsilon())) {
+            // verdicts graded under the old rules must not be reused
+            problem.setTestCaseVersion(problem.getTestCaseVersion() + 1);
+        }
         return problemRepository.save(problem);
     }
 }
@@ -0,0 +1,131 @@
+package uk.ac.swansea.autograder.api.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import uk.ac.swansea.autograder.api.controllers.dto.QueueStatsDto;
+import uk.ac.swansea.autograder.api.messaging.SubmissionLane;
+import uk.ac.swansea.autograder.api.messaging.SubmissionSender;
+import uk.ac.swansea.autograder.api.messaging.SubmissionWorkers;
+import uk.ac.swansea.autograder.exceptions.TooManyRequestsException;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Admission control for new submissions.
+ *
+ * The backlog of a lane is the number of submissions queued or being graded on any node, on that lane and on
+ * every lane with a higher priority; lower priority lanes (regrades) never count against new submissions.
+ * The estimated wait spreads it over the workers of this node at their average grading time,
+ * so it grows both with the queue and with slower grading once the workers or Piston are saturated.
+ * Above maxBacklog or maxWait a submission is either rejected with a retry delay (REJECT)
+ * or accepted into the deferred lane (DEFER), which is moved back to its lane once the backlog
+ * falls below resumeBacklog.
+ */
+@Service
+@Slf4j
+public class SubmissionAdmissionService {
+    public enum Mode {REJECT, DEFER}
+
+    private final SubmissionSender submissionSender;
+    private final SubmissionWorkers submissionWorkers;
+    private final Mode mode;
+    private final long maxBacklog;
+    private final long maxWait;
+    private final long resumeBacklog;
+    private final long defaultGradingTime;
+
+    public SubmissionAdmissionService(SubmissionSender submissionSender,
+                                      SubmissionWorkers submissionWorkers,
+                                      @Value("${app.admission.mode:REJECT}") Mode mode,
+                                      @Value("${app.admission.maxBacklog:500}") long maxBacklog,
+                                      @Value("${app.admission.maxWait:600000}") long maxWait,
+                                      @Value("${app.admission.resumeBacklog:250}") long resumeBacklog,
+                                      @Value("${app.admission.defaultGradingTime:2000}") long defaultGradingTime) {
+        this.submissionSender = submissionSender;
+        this.submissionWorkers = submissionWorkers;
+        this.mode = mode;
+        this.maxBacklog = maxBacklog;
+        this.maxWait = maxWait;
+        this.resumeBacklog = Math.min(resumeBacklog, maxBacklog);
+        this.defaultGradingTime = defaultGradingTime;
+    }
+
+    /**
+     * Decide whether a new submission may be queued on the lane.
+     *
+     * @return true if the submission should go to the deferred lane instead of the main queue
+     * @throws TooManyRequestsException if the queue is full and submissions are rejected
+     */
+    public boolean admit(SubmissionLane lane) throws TooManyRequestsException {
+        long backlog = submissionSender.backlog(lane);
+        long estimatedWait = estimatedWait(backlog);
+        if (accepting(backlog, estimatedWait)) {
+            return false;
+        }
+        if (mode == Mode.DEFER) {
+            return true;
+        }
+        log.warn("Rejecting {} submission, backlog: {}, estimated wait: {} ms", lane, backlog, estimatedWait);
+        throw new TooManyRequestsException(Math.max(1, (estimatedWait + 999) / 1000));
+    }
+
+    /**
+     * @return queue stats as seen by a new submission on the lane
+     */
+    public QueueStatsDto getQueueStats(SubmissionLane lane) {
+        Map<SubmissionLane, Long> lanes = new EnumMap<>(SubmissionLane.class);
+        long backlog = 0;
+        for (SubmissionLane other : SubmissionLane.values()) {
+            long depth = submissionSender.depth(other);
+            lanes.put(other, depth);
+            if (other.compareTo(lane) <= 0) {
+                backlog += depth;
+            }
+        }
+        long deferred = submissionSender.deferredBacklog();
+        boolean accepting = accepting(backlog, estimatedWait(backlog));
+        // a submission that is deferred also waits for the ones deferred before it
+        long estimatedWait = estimatedWait(accepting ? backlog : backlog + deferred);
+        return QueueStatsDto.builder()
+                .lane(lane)
+                .lanes(lanes)
+                .backlog(backlog)
+                .deferred(deferred)
+                .estimatedWaitSeconds((estimatedWait + 999) / 1000)
+                .accepting(accepting)
+                .build();
+    }
+
+    /**
+     * Move deferred submissions to the main queue while it has room for them.
+     */
+    @Scheduled(fixedDelayString = "${app.admission.promoteInterval:5000}")
+    public void promoteDeferred() {
+        long room = resumeBacklog - submissionSender.backlog(SubmissionLane.PRACTICE);
+        if (room <= 0) {
+            return;
+        }
+        int moved = submissionSender.promote((int) Math.min(room, Integer.MAX_VALUE));
+        if (moved > 0) {
+            log.info("Moved {} deferred submissions to the queue", moved);
+        }
+    }
+
+    private boolean accepting(long backlog, long estimatedWait) {
+        return backlog < maxBacklog && (maxWait <= 0 || estimatedWait < maxWait);
+    }
+
+    /**
+     * @return milliseconds until a submission queued behind the given backlog starts grading
+     */
+    private long estimatedWait(long backlog) {
+        double gradingTime = submissionWorkers.getAverageMillis();
+        if (gradingTime <= 0) {
+            gradingTime = defaultGradingTime;
+        }
+        return (long) Math.ceil((double) backlog / Math.max(1, submissionWorkers.getSize()) * gradingTime);
+    }
+}
@@ -0,0 +1,185 @@
+package uk.ac.swansea.autograder.api.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import uk.ac.swansea.autograder.api.entities.Problem;
+import uk.ac.swansea.autograder.api.entities.Submission;
+import uk.ac.swansea.autograder.api.entities.SubmissionDeadLetter;
+import uk.ac.swansea.autograder.api.messaging.SubmissionOutboxRelay;
+import uk.ac.swansea.autograder.api.repositories.SubmissionDeadLetterRepository;
+import uk.ac.swansea.autograder.api.repositories.SubmissionRepository;
+import uk.ac.swansea.autograder.exceptions.BadRequestException;
+import uk.ac.swansea.autograder.exceptions.ResourceNotFoundException;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retries of failed gradings and the dead letters of submissions that keep failing.
+ *
+ * A grading that throws, e.g. because the database was briefly unreachable, is retried after an exponential
+ * backoff with jitter, so retries of many submissions failing at once are spread out. A grading that never
+ * finishes, because its node died, counts as a failed attempt when its lease is taken over. After maxAttempts
+ * the submission is quarantined: it stays in PROCESSING without a lease, so neither the queue nor the recovery
+ * sweeper grades it again, and a dead letter records why. An admin can inspect dead letters and replay them
+ * once the cause is fixed.
+ */
+@Service
+@Slf4j
+public class SubmissionDeadLetterService {
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    private final SubmissionDeadLetterRepository submissionDeadLetterRepository;
+    private final SubmissionRepository submissionRepository;
+    private final SubmissionService submissionService;
+    private final ProblemService problemService;
+    private final SubmissionOutboxRelay submissionOutboxRelay;
+    private final int maxAttempts;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final Counter retried;
+    private final Counter quarantined;
+    private final Counter replayed;
+
+    public SubmissionDeadLetterService(SubmissionDeadLetterRepository submissionDeadLetterRepository,
+                                       SubmissionRepository submissionRepository,
+                                       SubmissionService submissionService,
+                                       ProblemService problemService,
+                                       SubmissionOutboxRelay submissionOutboxRelay,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${app.retry.maxAttempts:5}") int maxAttempts,
+                                       @Value("${app.retry.baseDelay:1000}") long baseDelay,
+                                       @Value("${app.retry.maxDelay:60000}") long maxDelay) {
+        this.submissionDeadLetterRepository = submissionDeadLetterRepository;
+        this.submissionRepository = submissionRepository;
+        this.submissionService = submissionService;
+        this.problemService = problemService;
+        this.submissionOutboxRelay = submissionOutboxRelay;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelay = Math.max(1, baseDelay);
+        this.maxDelay = Math.max(this.baseDelay, maxDelay);
+        this.retried = Counter.builder("submission.retry.scheduled")
+                .description("Failed gradings scheduled to be retried")
+                .register(meterRegistry);
+        this.quarantined = Counter.builder("submission.deadletter.quarantined")
+                .description("Submissions taken out of grading after failing too often")
+                .register(meterRegistry);
+        this.replayed = Counter.builder("submission.deadletter.replayed")
+                .description("Dead letters queued for grading again")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record a failed grading.
+     *
+     * @return milliseconds after which to retry, or -1 if the submission was quarantined instead
+     */
+    @Transactional
+    public long recordFailure(Long submissionId, Exception e) throws ResourceNotFoundException {
+        submissionRepository.incrementGradingAttempts(submissionId);
+        Submission submission = submissionService.getSubmission(submissionId);
+        if (isExhausted(submission)) {
+            quarantine(submission, e.toString());
+            return -1;
+        }
+        long delay = backoff(submission.getGradingAttempts(), baseDelay, maxDelay,
+                ThreadLocalRandom.current().nextDouble());
+        retried.increment();
+        log.warn("Grading submissionId=#{} failed (attempt {} of {}), retrying in {} ms: {}",
+                submissionId, submission.getGradingAttempts(), maxAttempts, delay, e.toString());
+        return delay;
+    }
+
+    /**
+     * @return true if the submission failed often enough to be quarantined rather than graded again
+     */
+    public boolean isExhausted(Submission submission) {
+        return submission.getGradingAttempts() != null && submission.getGradingAttempts() >= maxAttempts;
+    }
+
+    /**
+     * Take the submission out of grading and record a dead letter for it.
+     */
+    @Transactional
+    public void quarantine(Submission submission, String error) {
+        submission.setLeaseOwner(null);
+        submission.setLeaseExpiresAt(null);
+        submissionRepository.save(submission);
+        if (!submissionDeadLetterRepository.existsBySubmissionId(submission.getId())) {
+            SubmissionDeadLetter deadLetter = new SubmissionDeadLetter();
+            deadLetter.setSubmissionId(submission.getId());
+            deadLetter.setProblemId(submission.getProblemId());
+            deadLetter.setUserId(submission.getUserId());
+            deadLetter.setAttempts(submission.getGradingAttempts());
+            deadLetter.setError(error == null || error.length() <= MAX_ERROR_LENGTH
+                    ? error : error.substring(0, MAX_ERROR_LENGTH));
+            deadLetter.setCreatedAt(Instant.now());
+            submissionDeadLetterRepository.save(deadLetter);
+        }
+        quarantined.increment();
+        log.error("Quarantined submissionId=#{} after {} failed attempt(s): {}",
+                submission.getId(), submission.getGradingAttempts(), error);
+    }
+
+    public Page<SubmissionDeadLetter> getDeadLetters(Pageable pageable) {
+        return submissionDeadLetterRepository.findAll(pageable);
+    }
+
+    public SubmissionDeadLetter getDeadLetter(Long id) throws ResourceNotFoundException {
+        return submissionDeadLetterRepository.findById(id).orElseThrow(ResourceNotFoundException::new);
+    }
+
+    /**
+     * Queue the submission of a dead letter for grading again, with a fresh set of attempts.
+     *
+     * @throws BadRequestException if the submission is no longer waiting to be graded, e.g. it was regraded
+     */
+    @Transactional
+    public Submission replay(Long id) throws ResourceNotFoundException, BadRequestException {
+        SubmissionDeadLetter deadLetter = getDeadLetter(id);
+        Submission submission = submissionService.getSubmission(deadLetter.getSubmissionId());
+        if (!Objects.equals(submission.getStatus(), Submission.Status.PROCESSING)) {
+            throw new BadRequestException();
+        }
+        Problem problem = problemService.getProblem(submission.getProblemId());
+        submission.setGradingAttempts(0);
+        submissionService.requeueSubmissions(List.of(submission), Map.of(problem.getId(), problem));
+        submissionDeadLetterRepository.delete(deadLetter);
+        submissionOutboxRelay.wakeUp();
+        replayed.increment();
+        log.info("Replaying dead letter #{} of submissionId=#{}", id, submission.getId());
+        return submission;
+    }
+
+    /**
+     * Drop the dead letters of a problem whose submissions are all graded again.
+     */
+    @Transactional
+    public void deleteDeadLettersByProblemId(Long problemId) {
+        submissionDeadLetterRepository.deleteAllByProblemId(problemId);
+    }
+
+    /**
+     * Exponential backoff with equal jitter: half of the delay is fixed, the other half random,
+     * so retries keep a minimum spacing but do not all fire at the same time.
+     *
+     * @param attempt failed attempts so far, from 1
+     * @param random  uniformly distributed in [0, 1)
+     * @return milliseconds to wait before the next attempt
+     */
+    static long backoff(int attempt, long baseDelay, long maxDelay, double random) {
+        int doublings = Math.min(Math.max(0, attempt - 1), 30);
+        long delay = Math.min(maxDelay, baseDelay << doublings);
+        long half = delay / 2;
+        return half + (long) (random * (delay - half + 1));
+    }
+}
@@ -1,31 +1,107 @@
 package uk.ac.swansea.autograder.api.services;
 
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import uk.ac.swansea.autograder.api.controllers.dto.SubmissionDetailDto;
+import uk.ac.swansea.autograder.api.entities.Submission;
 import uk.ac.swansea.autograder.api.entities.TestCase;
 import uk.ac.swansea.autograder.api.entities.SubmissionDetail;
 import uk.ac.swansea.autograder.api.repositories.SubmissionDetailRepository;
+import uk.ac.swansea.autograder.exceptions.ResourceNotFoundException;
+import uk.ac.swansea.autograder.exceptions.UnauthorizedException;
 
 import java.util.List;
 
 @Service
 public class SubmissionDetailService {
     private final SubmissionDetailRepository submissionDetailRepository;
+    private final SubmissionService submissionService;
 
-    public SubmissionDetailService(SubmissionDetailRepository submissionDetailRepository) {
+    public SubmissionDetailService(SubmissionDetailRepository submissionDetailRepository,
+                                   SubmissionService submissionService) {
         this.submissionDetailRepository = submissionDetailRepository;
+        this.submissionService = submissionService;
     }
 
-    public List<SubmissionDetail> getSubmissionDetail(Long submissionId) {
-        return submissionDetailRepository
-                .findAllBySubmissionId(submissionId);
+    /**
+     * @return results of the submission with their test cases, read in one query
+     */
+    public List<SubmissionDetailDto> getSubmissionDetails(Long submissionId) {
+        return submissionDetailRepository.findDtosBySubmissionId(submissionId);
     }
 
-    public void createSubmissionDetail(Long submissionId, TestCase testCase, String output, Boolean isValid) {
+    /**
+     * Same as {@link #getSubmissionDetails} for the owner of the submission only. The ownership is checked by
+     * the same query; the submission itself is only read when there are no results, to tell why.
+     */
+    public List<SubmissionDetailDto> getOwnSubmissionDetails(Long submissionId, Long userId)
+            throws ResourceNotFoundException, UnauthorizedException {
+        List<SubmissionDetailDto> details = submissionDetailRepository
+                .findDtosBySubmissionIdAndUserId(submissionId, userId);
+        if (details.isEmpty()) {
+            Submission submission = submissionService.getSubmission(submissionId);
+            if (!submission.getUserId().equals(userId)) {
+                throw new UnauthorizedException();
+            }
+        }
+        return details;
+    }
+
+    /**
+     * Copy the per test case results of one submission to another.
+     */
+    public void copySubmissionDetails(Long fromSubmissionId, Long toSubmissionId) {
+        List<SubmissionDetail> copies = submissionDetailRepository.findAllBySubmissionId(fromSubmissionId).stream()
+                .map(detail -> {
+                    SubmissionDetail copy = new SubmissionDetail();
+                    copy.setSubmissionId(toSubmissionId);
+                    copy.setTestCase(detail.getTestCase());
+                    copy.setActualOutput(detail.getActualOutput());
+                    copy.setTestCaseIsPassed(detail.getTestCaseIsPassed());
+                    copy.setSkipped(detail.getSkipped());
+                    return copy;
+                })
+                .toList();
+        submissionDetailRepository.saveAll(copies);
+    }
+
+    /**
+     * Remove the per test case results of every submission to the problem.
+     */
+    @Transactional
+    public void deleteSubmissionDetailsByProblemId(Long problemId) {
+        submissionDetailRepository.deleteAllByProblemId(problemId);
+    }
+
+    /**
+     * Insert the per test case results of a submission together, in JDBC batches.
+     */
+    @Transactional
+    public void createSubmissionDetails(List<SubmissionDetail> submissionDetails) {
+        submissionDetailRepository.saveAll(submissionDetails);
+    }
+
+    /**
+     * @return result of one test case, not saved yet
+     */
+    public SubmissionDetail newSubmissionDetail(Long submissionId, TestCase testCase, String output, Boolean isValid) {
         SubmissionDetail submissionDetail = new SubmissionDetail();
         submissionDetail.setSubmissionId(submissionId);
         submissionDetail.setTestCase(testCase);
         submissionDetail.setActualOutput(output);
         submissionDetail.setTestCaseIsPassed(isValid);
-        submissionDetailRepository.save(submissionDetail);
+        return submissionDetail;
+    }
+
+    /**
+     * @return result of a test case the grading policy did not run, not saved yet
+     */
+    public SubmissionDetail newSkippedSubmissionDetail(Long submissionId, TestCase testCase) {
+        SubmissionDetail submissionDetail = new SubmissionDetail();
+        submissionDetail.setSubmissionId(submissionId);
+        submissionDetail.setTestCase(testCase);
+        submissionDetail.setTestCaseIsPassed(false);
+        submissionDetail.setSkipped(true);
+        return submissionDetail;
     }
 }
@@ -3,20 +3,36 @@ package uk.ac.swansea.autograder.api.services;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.RestTemplate;
 import uk.ac.swansea.autograder.api.controllers.dto.SubmissionDto;
 import uk.ac.swansea.autograder.api.entities.Problem;
 import uk.ac.swansea.autograder.api.entities.Submission;
+import uk.ac.swansea.autograder.api.entities.SubmissionDetail;
 import uk.ac.swansea.autograder.api.entities.TestCase;
-import uk.ac.swansea.autograder.api.messaging.SubmissionSender;
+import uk.ac.swansea.autograder.api.messaging.SubmissionLane;
+import uk.ac.swansea.autograder.api.messaging.SubmissionOutboxRelay;
 import uk.ac.swansea.autograder.api.services.dto.ExecutionDto;
 import uk.ac.swansea.autograder.api.services.dto.ExecutionResultDto;
 import uk.ac.swansea.autograder.api.services.dto.RuntimeDto;
+import uk.ac.swansea.autograder.api.services.dto.TestCaseOutcome;
 import uk.ac.swansea.autograder.exceptions.BadRequestException;
+import uk.ac.swansea.autograder.exceptions.ExecutionUnavailableException;
 import uk.ac.swansea.autograder.exceptions.ResourceNotFoundException;
+import uk.ac.swansea.autograder.exceptions.TooManyRequestsException;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 
 /**
  * Service responsible for executing student code submissions against test cases.
@@ -25,49 +41,170 @@ import java.util.Objects;
 @Service
 @Slf4j
 public class SubmissionExecutionService {
+    private static final Set<Submission.Status> GRADED = EnumSet.of(Submission.Status.COMPILE_ERROR,
+            Submission.Status.WRONG_ANSWER, Submission.Status.ACCEPTED);
+
     private final ProblemService problemService;
     private final TestCaseService testCaseService;
     private final ExecutionService executionService;
     private final SubmissionDetailService submissionDetailService;
     private final SubmissionService submissionService;
-    private final SubmissionSender submissionSender;
+    private final SubmissionOutboxRelay submissionOutboxRelay;
+    private final TestCaseExecutor testCaseExecutor;
+    private final SubmissionAdmissionService submissionAdmissionService;
+    private final SubmissionLeaseService submissionLeaseService;
+    private final SubmissionDeadLetterService submissionDeadLetterService;
+    private final TransactionTemplate transactionTemplate;
 
     public SubmissionExecutionService(ProblemService problemService,
                                       TestCaseService testCaseService,
                                       ExecutionService executionService,
                                       SubmissionDetailService submissionDetailService,
                                       SubmissionService submissionService,
-                                      SubmissionSender submissionSender) {
+                                      SubmissionOutboxRelay submissionOutboxRelay,
+                                      TestCaseExecutor testCaseExecutor,
+                                      SubmissionAdmissionService submissionAdmissionService,
+                                      SubmissionLeaseService submissionLeaseService,
+                                      SubmissionDeadLetterService submissionDeadLetterService,
+                                      PlatformTransactionManager transactionManager) {
         this.problemService = problemService;
         this.testCaseService = testCaseService;
         this.executionService = executionService;
         this.submissionDetailService = submissionDetailService;
         this.submissionService = submissionService;
-        this.submissionSender = submissionSender;
+        this.submissionOutboxRelay = submissionOutboxRelay;
+        this.testCaseExecutor = testCaseExecutor;
+        this.submissionAdmissionService = submissionAdmissionService;
+        this.submissionLeaseService = submissionLeaseService;
+        this.submissionDeadLetterService = submissionDeadLetterService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     public Submission submitSolution(SubmissionDto submissionDto)
-            throws ResourceNotFoundException, BadRequestException {
+            throws ResourceNotFoundException, BadRequestException, TooManyRequestsException {
         Problem problem = problemService.getProblem(submissionDto.getProblemId());
         if (!Objects.equals(problem.getStatus(), Problem.Status.ACTIVE)) {
             throw new BadRequestException();
         }
 
+        String codeHash = codeHash(submissionDto);
+        if (reuseVerdicts) {
+            Optional<Submission> previous = submissionService.findPreviousSubmission(problem.getId(),
+                    submissionDto.getUserId(), codeHash, problem.getTestCaseVersion());
+            if (previous.isPresent() && GRADED.contains(previous.get().getStatus())) {
+                return reuseVerdict(previous.get());
+            }
+        }
+
+        SubmissionLane lane = SubmissionLane.of(problem);
+        boolean deferred = submissionAdmissionService.admit(lane);
         Submission submission = submissionService.createSubmission(problem.getId(),
                 submissionDto.getUserId(),
                 submissionDto.getLanguage(),
                 submissionDto.getVersion(),
                 submissionDto.getFilename(),
-                submissionDto.getCode());
+                submissionDto.getCode(),
+                codeHash,
+                problem.getTestCaseVersion(),
+                problem.getTestCaseCount(),
+                lane,
+                schedulingWeight(problem),
+                deferred);
+        // committed, queue it now rather than at the relay's next run
+        submissionOutboxRelay.wakeUp();
+        return submission;
+    }
+
+    /**
+     * Grade every submission to the problem again on the regrade lane, behind exam and practice submissions,
+     * e.g. after its test cases were fixed. Previous results are discarded.
+     *
+     * @return number of submissions queued
+     */
+    @Transactional
+    public int regradeProblem(Long problemId) throws ResourceNotFoundException {
+        Problem problem = problemService.getProblem(problemId);
+        // reset first: it waits for verdicts being written to commit, so their details are deleted below,
+        // and verdicts written after it find their lease gone
+        int queued = submissionService.regradeSubmissionsByProblemId(problemId, problem.getTestCaseCount(),
+                problem.getTestCaseVersion(), schedulingWeight(problem));
+        submissionDetailService.deleteSubmissionDetailsByProblemId(problemId);
+        submissionDeadLetterService.deleteDeadLettersByProblemId(problemId);
+        submissionOutboxRelay.wakeUp();
+        log.info("Queued {} submission(s) of problem #{} for regrading", queued, problemId);
+        return queued;
+    }
 
-        int totalTestCases = testCaseService.countAllTestCasesByProblemId(submission.getProblemId());
-        submissionService.createSubmissionTestResult(submission.getId(), totalTestCases, 0, 0);
-        submissionSender.send(submission.getId());
+    private static int schedulingWeight(Problem problem) {
+        return problem.getSchedulingWeight() == null ? 1 : problem.getSchedulingWeight();
+    }
+
+    /**
+     * Identical code was already graded against the same test cases: record the same verdict
+     * without going through the queue or the execution engine.
+     */
+    private Submission reuseVerdict(Submission graded) {
+        log.info("Submission #{} resubmitted unchanged, reusing its verdict", graded.getId());
+        Submission submission = submissionService.createSubmissionFrom(graded);
+        submissionDetailService.copySubmissionDetails(graded.getId(), submission.getId());
+        if (clientEnabled) {
+            postToClient(submission);
+        }
         return submission;
     }
 
+    private static String codeHash(SubmissionDto submissionDto) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : List.of(
+                    Objects.toString(submissionDto.getLanguage(), ""),
+                    Objects.toString(submissionDto.getVersion(), ""),
+                    Objects.toString(submissionDto.getFilename(), ""),
+                    Objects.toString(submissionDto.getCode(), ""))) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Run the submission against all test cases of its problem and record the verdict.
+     * Does nothing if the submission is already graded, quarantined or another node holds its lease.
+     * A submission that failed too often, or whose problem no longer exists, is quarantined instead.
+     *
+     * @param submissionId submission to grade
+     * @throws ExecutionUnavailableException if the execution engine could not run the code;
+     *                                       nothing is recorded and the submission should be retried later
+     */
     public void runSubmission(Long submissionId) throws ResourceNotFoundException {
-        Submission submission = submissionService.getSubmission(submissionId);
+        if (!submissionLeaseService.acquire(submissionId)) {
+            log.info("Submission #{} is already graded or being graded elsewhere, skipping", submissionId);
+            return;
+        }
+        try {
+            Submission submission = submissionService.getSubmission(submissionId);
+            if (submissionDeadLetterService.isExhausted(submission)) {
+                submissionDeadLetterService.quarantine(submission, "Grading did not finish after "
+                        + submission.getGradingAttempts() + " attempt(s)");
+                return;
+            }
+            try {
+                gradeSubmission(submission);
+            } catch (ResourceNotFoundException e) {
+                // the problem was deleted, retrying cannot help
+                submissionDeadLetterService.quarantine(submission,
+                        "Problem #" + submission.getProblemId() + " not found");
+            }
+        } finally {
+            submissionLeaseService.release(submissionId);
+        }
+    }
+
+    private void gradeSubmission(Submission submission) throws ResourceNotFoundException {
+        Problem problem = problemService.getProblem(submission.getProblemId());
 
         List<TestCase> testCases = testCaseService.getAllTestCasesByProblemId(submission.getProblemId());
         ExecutionDto executionDto = ExecutionDto.builder()
@@ -75,28 +212,51 @@ public class SubmissionExecutionService {
                 .version(submission.getVersion())
                 .filename(submission.getFilename())
                 .code(submission.getCode())
+                .comparisonMode(problem.getComparisonMode())
+                .epsilon(problem.getEpsilon())
                 .build();
-        for (TestCase testCase : testCases) {
-            executionDto.setInput(testCase.getInput());
-            executionDto.setExpectedOutput(testCase.getExpectedOutput());
-            ExecutionResultDto executionResultDto;
-            try {
-                executionResultDto = executionService.submit(executionDto);
-            } catch (Exception e) {
-                submission.setStatus(Submission.Status.COMPILE_ERROR);
-                submission.setOutput(e.getMessage());
-                break; // the loop
+        List<TestCaseOutcome> outcomes = testCaseExecutor.run(executionDto, testCases, problem.failureBudget());
+        if (!outcomes.isEmpty()
+                && outcomes.get(outcomes.size() - 1).getError() instanceof ExecutionUnavailableException e) {
+            // not the student's fault, leave the submission untouched so it can be graded again
+            throw e;
+        }
+
+        // outcomes come back in test case order, so details are written deterministically;
+        // they are inserted together once grading is done
+        List<SubmissionDetail> details = new ArrayList<>(testCases.size());
+        int processedTestCases = 0;
+        int correctTestCases = 0;
+        boolean compileError = false;
+        for (TestCaseOutcome outcome : outcomes) {
+            if (outcome.hasError()) {
+                compileError = true;
+                submission.setOutput(outcome.getError().getMessage());
+                break;
             }
-            // save the result to submissionDetails
-            submissionDetailService.createSubmissionDetail(submission.getId(),
-                    testCase, executionResultDto.getOutput(), executionResultDto.getIsValid());
-            submission.setProcessedTestCases(submission.getProcessedTestCases() + 1);
+            ExecutionResultDto executionResultDto = outcome.getResult();
+            details.add(submissionDetailService.newSubmissionDetail(submission.getId(),
+                    outcome.getTestCase(), executionResultDto.getOutput(), executionResultDto.getIsValid()));
+            processedTestCases++;
             if (executionResultDto.getIsValid()) {
-                submission.setCorrectTestCases(submission.getCorrectTestCases() + 1);
+                correctTestCases++;
+            }
+        }
+        // the grading policy stopped early, the rest is recorded as skipped and counts as failed
+        int skippedTestCases = 0;
+        if (!compileError) {
+            for (TestCase testCase : testCases.subList(outcomes.size(), testCases.size())) {
+                details.add(submissionDetailService.newSkippedSubmissionDetail(submission.getId(), testCase));
+                skippedTestCases++;
             }
         }
+        submission.setProcessedTestCases(processedTestCases);
+        submission.setCorrectTestCases(correctTestCases);
+        submission.setSkippedTestCases(skippedTestCases);
 
-        if (Objects.equals(submission.getCorrectTestCases(), submission.getTotalTestCases())) {
+        if (compileError) {
+            submission.setStatus(Submission.Status.COMPILE_ERROR);
+        } else if (Objects.equals(submission.getCorrectTestCases(), submission.getTotalTestCases())) {
             submission.setStatus(Submission.Status.ACCEPTED);
         } else {
             submission.setStatus(Submission.Status.WRONG_ANSWER);
@@ -106,7 +266,22 @@ public class SubmissionExecutionService {
                         (double) submission.getTotalTestCases());
         submission.setGrade(grade);
 
-        submissionService.updateSubmission(submission);
+        // details and verdict together, a failure in between must not leave details of an ungraded submission.
+        // The verdict goes first and only under this node's lease: a submission reset by a regrade meanwhile
+        // keeps its reset state and gets no details of the stale run
+        Boolean recorded = transactionTemplate.execute(status -> {
+            if (!submissionService.recordVerdict(submission, submissionLeaseService.getOwner())) {
+                return false;
+            }
+            submissionDetailService.createSubmissionDetails(details);
+            return true;
+        });
+        if (!Boolean.TRUE.equals(recorded)) {
+            log.info("Submission #{} lost its lease while being graded, dropping the verdict", submission.getId());
+            return;
+        }
+        submission.setLeaseOwner(null);
+        submission.setLeaseExpiresAt(null);
 
         // send it to another service
         if (clientEnabled) {
@@ -121,6 +296,9 @@ public class SubmissionExecutionService {
     @Value("${app.client.enabled}")
     private Boolean clientEnabled;
 
+    @Value("${app.submission.reuseVerdicts:true}")
+    private boolean reuseVerdicts;
+
     private void postToClient(Submission submissionTestResult) {
         String uri = clientUrl;
         RestTemplate restTemplate = new RestTemplate();
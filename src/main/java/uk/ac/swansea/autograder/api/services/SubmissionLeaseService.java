@@ -0,0 +1,194 @@
+package uk.ac.swansea.autograder.api.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.data.util.Streamable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.ac.swansea.autograder.api.entities.Problem;
+import uk.ac.swansea.autograder.api.entities.Submission;
+import uk.ac.swansea.autograder.api.messaging.SubmissionLane;
+import uk.ac.swansea.autograder.api.messaging.SubmissionOutboxRelay;
+import uk.ac.swansea.autograder.api.messaging.SubmissionSender;
+import uk.ac.swansea.autograder.api.repositories.ProblemRepository;
+import uk.ac.swansea.autograder.api.repositories.SubmissionRepository;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Leases on submissions in PROCESSING, so none stays there forever.
+ *
+ * A submission gets a long queue lease when it is queued. A node grading it takes a short lease and renews it
+ * with a heartbeat until the verdict is written; a node that finds the lease held by another node, or the
+ * submission already graded, skips it, so a submission queued twice is still graded once.
+ * When a lease expires, because the node died or the queue entry was lost, the sweeper queues the submission
+ * again. It does so at most batchSize per run and only while the practice backlog is below maxBacklog, so
+ * after a restart the recovered submissions are drained at a controlled rate instead of all at once.
+ */
+@Service
+@Slf4j
+public class SubmissionLeaseService {
+    private final SubmissionRepository submissionRepository;
+    private final ProblemRepository problemRepository;
+    private final SubmissionService submissionService;
+    private final SubmissionSender submissionSender;
+    private final SubmissionOutboxRelay submissionOutboxRelay;
+    private final TransactionTemplate transactionTemplate;
+    private final String owner;
+    private final Duration leaseTtl;
+    private final int sweepBatchSize;
+    private final long maxBacklog;
+    // submissions this node is grading
+    private final Set<Long> held = ConcurrentHashMap.newKeySet();
+    private final AtomicLong expired = new AtomicLong();
+    private final Counter recovered;
+    private final Counter redispatched;
+
+    public SubmissionLeaseService(SubmissionRepository submissionRepository,
+                                  ProblemRepository problemRepository,
+                                  SubmissionService submissionService,
+                                  SubmissionSender submissionSender,
+                                  SubmissionOutboxRelay submissionOutboxRelay,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${app.messaging.consumerName:}") String consumerName,
+                                  @Value("${app.recovery.leaseTtl:60000}") long leaseTtl,
+                                  @Value("${app.recovery.batchSize:20}") int sweepBatchSize,
+                                  @Value("${app.recovery.maxBacklog:100}") long maxBacklog) {
+        this.submissionRepository = submissionRepository;
+        this.problemRepository = problemRepository;
+        this.submissionService = submissionService;
+        this.submissionSender = submissionSender;
+        this.submissionOutboxRelay = submissionOutboxRelay;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.owner = consumerName.isBlank() ? ManagementFactory.getRuntimeMXBean().getName() : consumerName;
+        this.leaseTtl = Duration.ofMillis(leaseTtl);
+        this.sweepBatchSize = Math.max(1, sweepBatchSize);
+        this.maxBacklog = maxBacklog;
+
+        Gauge.builder("submission.recovery.expired", expired, AtomicLong::get)
+                .description("Submissions with an expired lease waiting to be queued again")
+                .register(meterRegistry);
+        this.recovered = Counter.builder("submission.recovery.recovered")
+                .description("Expired leases taken over by the sweeper")
+                .register(meterRegistry);
+        this.redispatched = Counter.builder("submission.recovery.redispatched")
+                .description("Submissions queued again after their lease expired")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return name this node holds leases under
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * Take the lease to grade a submission.
+     *
+     * @return false if the submission is already graded or another node, or this one, is grading it
+     */
+    public boolean acquire(Long submissionId) {
+        // a second queue entry of a submission this node is grading; the lease alone would let it through
+        if (!held.add(submissionId)) {
+            return false;
+        }
+        Instant now = Instant.now();
+        Integer updated;
+        try {
+            updated = transactionTemplate.execute(status -> submissionRepository.acquireLease(submissionId,
+                    Submission.Status.PROCESSING, owner, now.plus(leaseTtl), now));
+        } catch (RuntimeException e) {
+            held.remove(submissionId);
+            throw e;
+        }
+        if (updated == null || updated == 0) {
+            held.remove(submissionId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Keep the lease for delayMillis without heartbeats, e.g. while waiting to retry on an unavailable engine.
+     * This node can take it again any time; other nodes once the delay and one lease period have passed.
+     */
+    public void hold(Long submissionId, long delayMillis) {
+        held.remove(submissionId);
+        Instant expiresAt = Instant.now().plusMillis(delayMillis).plus(leaseTtl);
+        transactionTemplate.executeWithoutResult(status -> submissionRepository.renewLeases(List.of(submissionId),
+                owner, expiresAt, Submission.Status.PROCESSING));
+    }
+
+    /**
+     * Stop renewing the lease. Writing the verdict clears it.
+     */
+    public void release(Long submissionId) {
+        held.remove(submissionId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.recovery.heartbeatInterval:20000}")
+    public void heartbeat() {
+        if (held.isEmpty()) {
+            return;
+        }
+        List<Long> ids = List.copyOf(held);
+        Instant expiresAt = Instant.now().plus(leaseTtl);
+        transactionTemplate.executeWithoutResult(status -> submissionRepository.renewLeases(ids, owner, expiresAt,
+                Submission.Status.PROCESSING));
+    }
+
+    /**
+     * Queue again a batch of submissions whose lease expired.
+     */
+    @Scheduled(initialDelayString = "${app.recovery.initialDelay:10000}",
+            fixedDelayString = "${app.recovery.interval:10000}")
+    public void sweep() {
+        expired.set(submissionRepository.countByStatusAndLeaseExpiresAtBefore(Submission.Status.PROCESSING, Instant.now()));
+        if (expired.get() == 0) {
+            return;
+        }
+        long backlog = submissionSender.backlog(SubmissionLane.PRACTICE);
+        if (backlog >= maxBacklog) {
+            log.info("{} submission(s) to recover, waiting for the backlog of {} to drain", expired.get(), backlog);
+            return;
+        }
+        Integer requeued = transactionTemplate.execute(status -> {
+            List<Long> ids = submissionRepository.lockExpiredLeases(Submission.Status.PROCESSING.ordinal(),
+                    Instant.now(), sweepBatchSize);
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            recovered.increment(ids.size());
+            List<Submission> submissions = Streamable.of(submissionRepository.findAllById(ids)).toList();
+            Map<Long, Problem> problems = Streamable.of(problemRepository.findAllById(submissions.stream()
+                            .map(Submission::getProblemId)
+                            .collect(Collectors.toSet())))
+                    .stream()
+                    .collect(Collectors.toMap(Problem::getId, Function.identity()));
+            submissionService.requeueSubmissions(submissions, problems);
+            return submissions.size();
+        });
+        if (requeued != null && requeued > 0) {
+            redispatched.increment(requeued);
+            expired.addAndGet(-requeued);
+            submissionOutboxRelay.wakeUp();
+            log.warn("Queued {} submission(s) again after their lease expired, {} left", requeued, expired.get());
+        }
+    }
+}
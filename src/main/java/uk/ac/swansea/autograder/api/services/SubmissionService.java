@@ -1,23 +1,43 @@
 package uk.ac.swansea.autograder.api.services;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import uk.ac.swansea.autograder.api.controllers.dto.SubmissionBriefDto;
+import uk.ac.swansea.autograder.api.entities.Problem;
 import uk.ac.swansea.autograder.api.entities.Submission;
+import uk.ac.swansea.autograder.api.entities.SubmissionOutbox;
+import uk.ac.swansea.autograder.api.messaging.SubmissionLane;
+import uk.ac.swansea.autograder.api.repositories.SubmissionOutboxRepository;
 import uk.ac.swansea.autograder.api.repositories.SubmissionRepository;
 import uk.ac.swansea.autograder.exceptions.ResourceNotFoundException;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
 @Service
 public class SubmissionService {
     private final SubmissionRepository submissionRepository;
+    private final SubmissionOutboxRepository submissionOutboxRepository;
+    private final Duration queueLease;
 
-    public SubmissionService(SubmissionRepository submissionRepository) {
+    public SubmissionService(SubmissionRepository submissionRepository,
+                             SubmissionOutboxRepository submissionOutboxRepository,
+                             @Value("${app.recovery.queueLease:1800000}") long queueLease) {
         this.submissionRepository = submissionRepository;
+        this.submissionOutboxRepository = submissionOutboxRepository;
+        this.queueLease = Duration.ofMillis(queueLease);
     }
 
-    public Page<Submission> getSubmissionsByProblemIdAndUserId(Long problemId, Long userId,
-                                                                  Pageable pageable) {
-        return submissionRepository.findAllByProblemIdAndUserId(problemId, userId, pageable);
+    public Page<SubmissionBriefDto> getSubmissionsByProblemIdAndUserId(Long problemId, Long userId,
+                                                                       Pageable pageable) {
+        return submissionRepository.findBriefsByProblemIdAndUserId(problemId, userId, pageable);
     }
 
     public Submission getSubmission(Long submissionId) throws ResourceNotFoundException {
@@ -25,15 +45,53 @@ public class SubmissionService {
                 ResourceNotFoundException::new);
     }
 
-    public Page<Submission> getSubmissionsByUserId(Long userId, Pageable pageable) {
-        return submissionRepository.findAllByUserId(userId, pageable);
+    public Page<SubmissionBriefDto> getSubmissionsByUserId(Long userId, Pageable pageable) {
+        return submissionRepository.findBriefsByUserId(userId, pageable);
+    }
+
+    public Page<SubmissionBriefDto> getSubmissionsByProblemId(Long problemId, Pageable pageable) {
+        return submissionRepository.findBriefsByProblemId(problemId, pageable);
+    }
+
+    /**
+     * A page without a total count, as are those of the other ...Before methods.
+     *
+     * @param afterId id of the last submission of the previous page, Long.MAX_VALUE to start from the newest
+     */
+    public Slice<SubmissionBriefDto> getSubmissionsBefore(Long afterId, Pageable pageable) {
+        return submissionRepository.findBriefsBefore(afterId, pageable);
+    }
+
+    public Slice<SubmissionBriefDto> getSubmissionsByProblemIdBefore(Long problemId, Long afterId,
+                                                                     Pageable pageable) {
+        return submissionRepository.findBriefsByProblemIdBefore(problemId, afterId, pageable);
     }
 
-    public Page<Submission> getSubmissionsByProblemId(Long problemId, Pageable pageable) {
-        return submissionRepository.findAllByProblemId(problemId, pageable);
+    public Slice<SubmissionBriefDto> getSubmissionsByUserIdBefore(Long userId, Long afterId, Pageable pageable) {
+        return submissionRepository.findBriefsByUserIdBefore(userId, afterId, pageable);
     }
 
-    public Submission createSubmission(Long problemId, Long userId, String language, String version, String filename, String code) {
+    public Slice<SubmissionBriefDto> getSubmissionsByProblemIdAndUserIdBefore(Long problemId, Long userId,
+                                                                              Long afterId, Pageable pageable) {
+        return submissionRepository.findBriefsByProblemIdAndUserIdBefore(problemId, userId, afterId, pageable);
+    }
+
+    /**
+     * Latest submission of the same code by the same user for the same test case set.
+     */
+    public Optional<Submission> findPreviousSubmission(Long problemId, Long userId, String codeHash, Integer testCaseVersion) {
+        return submissionRepository.findFirstByProblemIdAndUserIdAndCodeHashAndTestCaseVersionOrderByIdDesc(
+                problemId, userId, codeHash, testCaseVersion);
+    }
+
+    /**
+     * Insert a submission ready to be graded, together with the outbox row that queues it.
+     * Either both are written or neither is, so no submission is left waiting for a queue entry that never comes.
+     */
+    @Transactional
+    public Submission createSubmission(Long problemId, Long userId, String language, String version, String filename, String code,
+                                       String codeHash, Integer testCaseVersion, int totalTestCases,
+                                       SubmissionLane lane, int weight, boolean deferred) {
         Submission submission = new Submission();
         submission.setProblemId(problemId);
         submission.setUserId(userId);
@@ -41,24 +99,109 @@ public class SubmissionService {
         submission.setVersion(version);
         submission.setFilename(filename);
         submission.setCode(code);
-        submission.setStatus(Submission.Status.NEW);
+        submission.setCodeHash(codeHash);
+        submission.setTestCaseVersion(testCaseVersion);
+        submission.setStatus(Submission.Status.PROCESSING);
+        submission.setTotalTestCases(totalTestCases);
+        submission.setProcessedTestCases(0);
+        submission.setCorrectTestCases(0);
+        // if it is lost on the way to a worker, the recovery sweeper queues it again
+        submission.setLeaseExpiresAt(Instant.now().plus(queueLease));
+        submission = submissionRepository.save(submission);
+        submissionOutboxRepository.save(outbox(submission, lane, weight, deferred));
+        return submission;
+    }
+
+    private static SubmissionOutbox outbox(Submission submission, SubmissionLane lane, int weight, boolean deferred) {
+        SubmissionOutbox outbox = new SubmissionOutbox();
+        outbox.setSubmissionId(submission.getId());
+        outbox.setUserId(submission.getUserId());
+        outbox.setWeight(weight);
+        outbox.setLane(lane);
+        outbox.setDeferred(deferred);
+        return outbox;
+    }
+
+    /**
+     * Copy the verdict of an already graded submission.
+     */
+    public Submission createSubmissionFrom(Submission graded) {
+        Submission submission = new Submission();
+        submission.setProblemId(graded.getProblemId());
+        submission.setUserId(graded.getUserId());
+        submission.setLanguage(graded.getLanguage());
+        submission.setVersion(graded.getVersion());
+        submission.setFilename(graded.getFilename());
+        submission.setCode(graded.getCode());
+        submission.setCodeHash(graded.getCodeHash());
+        submission.setTestCaseVersion(graded.getTestCaseVersion());
+        submission.setStatus(graded.getStatus());
+        submission.setOutput(graded.getOutput());
+        submission.setGrade(graded.getGrade());
+        submission.setTotalTestCases(graded.getTotalTestCases());
+        submission.setProcessedTestCases(graded.getProcessedTestCases());
+        submission.setCorrectTestCases(graded.getCorrectTestCases());
+        submission.setSkippedTestCases(graded.getSkippedTestCases());
         return submissionRepository.save(submission);
     }
 
-    public void updateSubmission(Submission submission) {
-        submissionRepository.save(submission);
+    /**
+     * Put every submission to the problem back in PROCESSING against its current test case set
+     * and queue them on the regrade lane.
+     *
+     * @return number of submissions queued
+     */
+    @Transactional
+    public int regradeSubmissionsByProblemId(Long problemId, int totalTestCases, Integer testCaseVersion, int weight) {
+        submissionRepository.resetAllByProblemId(problemId, Submission.Status.PROCESSING, totalTestCases, testCaseVersion,
+                Instant.now().plus(queueLease));
+        List<SubmissionOutbox> outbox = submissionRepository.findAllByProblemId(problemId).stream()
+                .map(submission -> outbox(submission, SubmissionLane.REGRADE, weight, false))
+                .toList();
+        submissionOutboxRepository.saveAll(outbox);
+        return outbox.size();
     }
 
-    public Page<Submission> getSubmissions(Pageable pageable) {
-        return submissionRepository.findAll(pageable);
+    /**
+     * Queue again submissions whose lease expired, on the lane of their problem.
+     * A lease that expired with an owner is a grading that never finished and counts as a failed attempt.
+     */
+    @Transactional
+    public void requeueSubmissions(List<Submission> submissions, Map<Long, Problem> problems) {
+        Instant leaseExpiresAt = Instant.now().plus(queueLease);
+        List<SubmissionOutbox> outbox = submissions.stream()
+                .map(submission -> {
+                    if (submission.getLeaseOwner() != null) {
+                        submission.setGradingAttempts(submission.getGradingAttempts() + 1);
+                    }
+                    submission.setLeaseOwner(null);
+                    submission.setLeaseExpiresAt(leaseExpiresAt);
+                    Problem problem = problems.get(submission.getProblemId());
+                    return outbox(submission, SubmissionLane.of(problem),
+                            problem.getSchedulingWeight() == null ? 1 : problem.getSchedulingWeight(), false);
+                })
+                .toList();
+        submissionRepository.saveAll(submissions);
+        submissionOutboxRepository.saveAll(outbox);
     }
 
-    public void createSubmissionTestResult(Long submissionId, int totalTestCases, int processedTestCases, int correctTestCases) throws ResourceNotFoundException {
-        Submission submission = getSubmission(submissionId);
-        submission.setStatus(Submission.Status.PROCESSING);
-        submission.setTotalTestCases(totalTestCases);
-        submission.setProcessedTestCases(processedTestCases);
-        submission.setCorrectTestCases(correctTestCases);
+    /**
+     * Record the verdict set on the submission, if it is still graded under the lease of leaseOwner.
+     *
+     * @return false if the lease was lost meanwhile, nothing is written then
+     */
+    @Transactional
+    public boolean recordVerdict(Submission submission, String leaseOwner) {
+        return submissionRepository.recordVerdict(submission.getId(), leaseOwner, submission.getStatus(),
+                submission.getOutput(), submission.getProcessedTestCases(), submission.getCorrectTestCases(),
+                submission.getSkippedTestCases(), submission.getGrade()) > 0;
+    }
+
+    public void updateSubmission(Submission submission) {
         submissionRepository.save(submission);
     }
+
+    public Page<SubmissionBriefDto> getSubmissions(Pageable pageable) {
+        return submissionRepository.findAllBriefs(pageable);
+    }
 }
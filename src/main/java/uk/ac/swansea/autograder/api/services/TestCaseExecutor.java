@@ -0,0 +1,238 @@
+package uk.ac.swansea.autograder.api.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.ac.swansea.autograder.api.entities.TestCase;
+import uk.ac.swansea.autograder.api.services.batch.BatchExecutionService;
+import uk.ac.swansea.autograder.api.services.dto.ExecutionDto;
+import uk.ac.swansea.autograder.api.services.dto.TestCaseOutcome;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the test cases of a submission against the execution engine.
+ *
+ * SEQUENTIAL mode runs test cases one after another on the calling thread.
+ * PARALLEL mode sends them through the non-blocking Piston client, with at most
+ * maxConcurrentPerNode requests in flight on the whole node and maxParallelPerSubmission per submission.
+ * In both modes outcomes are returned in test case order and stop at the first error,
+ * or once the failure budget is used up. Where grading stops depends only on the outcomes in order,
+ * never on which parallel request happened to finish first.
+ *
+ * Before a PARALLEL fan-out, code in a compiled language is compiled once on its own, so code that does not
+ * compile fails with a single execution instead of one per test case in flight.
+ *
+ * With batching enabled, languages that have a batch harness first run all test cases in a single
+ * execution; whatever the batch could not return is run with the configured mode.
+ */
+@Service
+@Slf4j
+public class TestCaseExecutor {
+    public enum Mode {SEQUENTIAL, PARALLEL}
+
+    private final ExecutionService executionService;
+    private final BatchExecutionService batchExecutionService;
+    private final Mode mode;
+    private final boolean batched;
+    private final int maxParallelPerSubmission;
+    private final Semaphore nodePermits;
+    private final boolean compileCheck;
+    private final Set<String> compiledLanguages;
+    private final Integer compileCheckRunTimeout;
+
+    public TestCaseExecutor(ExecutionService executionService,
+                            BatchExecutionService batchExecutionService,
+                            @Value("${app.execution.mode:SEQUENTIAL}") Mode mode,
+                            @Value("${app.execution.batch.enabled:false}") boolean batched,
+                            @Value("${app.execution.maxParallelPerSubmission:4}") int maxParallelPerSubmission,
+                            @Value("${app.execution.maxConcurrentPerNode:16}") int maxConcurrentPerNode,
+                            @Value("${app.execution.compileCheck.enabled:true}") boolean compileCheck,
+                            @Value("${app.execution.compileCheck.languages:c,c++,kotlin,rust,csharp}") List<String> compiledLanguages,
+                            @Value("${app.execution.compileCheck.runTimeout:1000}") int compileCheckRunTimeout) {
+        this.executionService = executionService;
+        this.batchExecutionService = batchExecutionService;
+        this.mode = mode;
+        this.batched = batched;
+        this.maxParallelPerSubmission = Math.max(1, maxParallelPerSubmission);
+        this.nodePermits = new Semaphore(Math.max(1, maxConcurrentPerNode));
+        this.compileCheck = compileCheck;
+        this.compiledLanguages = compiledLanguages.stream()
+                .map(language -> language.trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+        this.compileCheckRunTimeout = compileCheckRunTimeout > 0 ? compileCheckRunTimeout : null;
+        log.info("Test case execution mode: {}, batched: {}, per submission: {}, per node: {}",
+                mode, batched, this.maxParallelPerSubmission, maxConcurrentPerNode);
+    }
+
+    /**
+     * Run every test case with the code described by the template.
+     *
+     * @param template  execution parameters shared by all test cases (language, version, code)
+     * @param testCases test cases in the order their results must be recorded
+     * @param maxFailures number of failed test cases after which to stop, 0 to run all of them
+     * @return outcomes in test case order, ending at the first outcome with an error or at the last allowed failure
+     */
+    public List<TestCaseOutcome> run(ExecutionDto template, List<TestCase> testCases, int maxFailures) {
+        if (batched && testCases.size() > 1 && batchExecutionService.supports(template.getLanguage())) {
+            return runBatched(template, testCases, maxFailures);
+        }
+        return runPerTestCase(template, testCases, maxFailures);
+    }
+
+    private List<TestCaseOutcome> runBatched(ExecutionDto template, List<TestCase> testCases, int maxFailures) {
+        List<TestCaseOutcome> outcomes = new ArrayList<>(testCases.size());
+        int failures = 0;
+        for (TestCaseOutcome outcome : batchExecutionService.run(template, testCases)) {
+            outcomes.add(outcome);
+            if (outcome.isFailure()) {
+                failures++;
+            }
+            if (isFinal(outcome, failures, maxFailures)) {
+                return outcomes;
+            }
+        }
+        if (outcomes.size() < testCases.size()) {
+            outcomes.addAll(runPerTestCase(template, testCases.subList(outcomes.size(), testCases.size()),
+                    maxFailures == 0 ? 0 : maxFailures - failures));
+        }
+        return outcomes;
+    }
+
+    private List<TestCaseOutcome> runPerTestCase(ExecutionDto template, List<TestCase> testCases, int maxFailures) {
+        if (mode == Mode.PARALLEL && testCases.size() > 1) {
+            if (compileCheck && template.getLanguage() != null
+                    && compiledLanguages.contains(template.getLanguage().toLowerCase(Locale.ROOT))) {
+                try {
+                    executionService.compile(template, compileCheckRunTimeout);
+                } catch (Exception e) {
+                    return List.of(TestCaseOutcome.builder().testCase(testCases.get(0)).error(e).build());
+                }
+            }
+            return runParallel(template, testCases, maxFailures);
+        }
+        return runSequential(template, testCases, maxFailures);
+    }
+
+    /**
+     * @return true if no outcome after this one should be recorded
+     */
+    private static boolean isFinal(TestCaseOutcome outcome, int failures, int maxFailures) {
+        return outcome.hasError() || (maxFailures > 0 && failures >= maxFailures);
+    }
+
+    private List<TestCaseOutcome> runSequential(ExecutionDto template, List<TestCase> testCases, int maxFailures) {
+        List<TestCaseOutcome> outcomes = new ArrayList<>(testCases.size());
+        int failures = 0;
+        for (TestCase testCase : testCases) {
+            TestCaseOutcome outcome = runOne(template, testCase);
+            outcomes.add(outcome);
+            if (outcome.isFailure()) {
+                failures++;
+            }
+            if (isFinal(outcome, failures, maxFailures)) {
+                break;
+            }
+        }
+        return outcomes;
+    }
+
+    private List<TestCaseOutcome> runParallel(ExecutionDto template, List<TestCase> testCases, int maxFailures) {
+        Semaphore permits = new Semaphore(maxParallelPerSubmission);
+        // outcomes complete out of order; once enough of them failed no more requests are sent,
+        // and the in-order walk below decides where grading actually stops
+        AtomicBoolean errored = new AtomicBoolean(false);
+        AtomicInteger failed = new AtomicInteger();
+        List<CompletableFuture<TestCaseOutcome>> futures = new ArrayList<>(testCases.size());
+        try {
+            for (TestCase testCase : testCases) {
+                permits.acquire();
+                if (errored.get() || (maxFailures > 0 && failed.get() >= maxFailures)) {
+                    // the remaining test cases won't be recorded
+                    permits.release();
+                    break;
+                }
+                try {
+                    nodePermits.acquire();
+                } catch (InterruptedException e) {
+                    permits.release();
+                    throw e;
+                }
+                futures.add(runOneAsync(template, testCase).whenComplete((outcome, e) -> {
+                    nodePermits.release();
+                    permits.release();
+                    if (outcome.hasError()) {
+                        errored.set(true);
+                    }
+                    if (outcome.isFailure()) {
+                        failed.incrementAndGet();
+                    }
+                }));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Interrupted while running test cases", e);
+        }
+
+        List<TestCaseOutcome> outcomes = new ArrayList<>(futures.size());
+        int failures = 0;
+        for (CompletableFuture<TestCaseOutcome> future : futures) {
+            TestCaseOutcome outcome = future.join();
+            outcomes.add(outcome);
+            if (outcome.isFailure()) {
+                failures++;
+            }
+            if (isFinal(outcome, failures, maxFailures)) {
+                break;
+            }
+        }
+        return outcomes;
+    }
+
+    private CompletableFuture<TestCaseOutcome> runOneAsync(ExecutionDto template, TestCase testCase) {
+        return executionService.submitAsync(toExecutionDto(template, testCase))
+                .handle((result, e) -> TestCaseOutcome.builder()
+                        .testCase(testCase)
+                        .result(result)
+                        .error(e == null ? null : unwrap(e))
+                        .build());
+    }
+
+    private static Exception unwrap(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof Exception exception ? exception : new RuntimeException(cause);
+    }
+
+    private static ExecutionDto toExecutionDto(ExecutionDto template, TestCase testCase) {
+        return template.toBuilder()
+                .input(testCase.getInput())
+                .expectedOutput(testCase.getExpectedOutput())
+                .comparisonMode(testCase.getComparisonMode() != null
+                        ? testCase.getComparisonMode() : template.getComparisonMode())
+                .build();
+    }
+
+    private TestCaseOutcome runOne(ExecutionDto template, TestCase testCase) {
+        try {
+            return TestCaseOutcome.builder()
+                    .testCase(testCase)
+                    .result(executionService.submit(toExecutionDto(template, testCase)))
+                    .build();
+        } catch (Exception e) {
+            return TestCaseOutcome.builder()
+                    .testCase(testCase)
+                    .error(e)
+                    .build();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package uk.ac.swansea.autograder.api.services;
 
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import uk.ac.swansea.autograder.api.controllers.dto.TestCaseDto;
 import uk.ac.swansea.autograder.api.entities.TestCase;
 import uk.ac.swansea.autograder.api.repositories.TestCaseRepository;
@@ -11,31 +12,49 @@ import java.util.List;
 @Service
 public class TestCaseService {
     private final TestCaseRepository testCaseRepository;
+    private final ProblemService problemService;
 
-    public TestCaseService(TestCaseRepository testCaseRepository) {
+    public TestCaseService(TestCaseRepository testCaseRepository, ProblemService problemService) {
         this.testCaseRepository = testCaseRepository;
+        this.problemService = problemService;
     }
 
     public List<TestCase> getAllTestCasesByProblemId(Long id) {
         return testCaseRepository.findAllByProblemId(id);
     }
-    public List<TestCase> getAllTestCasesByProblemId(Long id, Pageable pageable) {
+    /**
+     * @param afterId id of the last test case of the previous page, null to page by offset
+     */
+    public List<TestCase> getAllTestCasesByProblemId(Long id, Long afterId, Pageable pageable) {
+        if (afterId != null) {
+            return testCaseRepository.findAllByProblemIdAndIdLessThan(id, afterId, pageable);
+        }
         return testCaseRepository.findAllByProblemId(id, pageable);
     }
 
+    @Transactional
     public TestCase addTestCase(Long problemId, TestCaseDto testCaseDto) {
         TestCase testCase = new TestCase();
         testCase.setProblemId(problemId);
         testCase.setInput(testCaseDto.getInput());
         testCase.setExpectedOutput(testCaseDto.getExpectedOutput());
-        return testCaseRepository.save(testCase);
+        testCase.setComparisonMode(testCaseDto.getComparisonMode());
+        testCase = testCaseRepository.save(testCase);
+        problemService.addTestCase(problemId);
+        return testCase;
     }
 
     public int countAllTestCasesByProblemId(Long problemId) {
         return testCaseRepository.countAllByProblemId(problemId);
     }
 
-    public List<TestCase> getAllTestCases(Pageable pageable) {
-        return testCaseRepository.findAll(pageable).toList();
+    /**
+     * @param afterId id of the last test case of the previous page, null to page by offset
+     */
+    public List<TestCase> getAllTestCases(Long afterId, Pageable pageable) {
+        if (afterId != null) {
+            return testCaseRepository.findAllByIdLessThan(afterId, pageable);
+        }
+        return testCaseRepository.findAllBy(pageable);
     }
 }
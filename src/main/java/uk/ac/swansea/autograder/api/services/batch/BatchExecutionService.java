@@ -0,0 +1,119 @@
+package uk.ac.swansea.autograder.api.services.batch;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.ac.swansea.autograder.api.entities.TestCase;
+import uk.ac.swansea.autograder.api.services.ExecutionService;
+import uk.ac.swansea.autograder.api.services.compare.OutputComparator;
+import uk.ac.swansea.autograder.api.services.compare.OutputComparators;
+import uk.ac.swansea.autograder.api.services.dto.ExecutionDto;
+import uk.ac.swansea.autograder.api.services.dto.TestCaseOutcome;
+import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteRequest;
+import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteRequest.PistonFile;
+import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteResponse;
+import uk.ac.swansea.autograder.exceptions.ExecutionUnavailableException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Runs all test cases of a submission in a single Piston execute call through a language harness,
+ * so the sandbox setup and the compilation are paid once per submission instead of once per test case.
+ */
+@Service
+@Slf4j
+public class BatchExecutionService {
+    private final ExecutionService executionService;
+    private final Map<String, BatchHarness> harnesses = new HashMap<>();
+    private final int runTimeout;
+
+    public BatchExecutionService(ExecutionService executionService,
+                                 List<BatchHarness> harnesses,
+                                 @Value("${app.execution.batch.languages:python,c,c++}") List<String> languages,
+                                 @Value("${app.execution.batch.runTimeout:3000}") int runTimeout) {
+        this.executionService = executionService;
+        Set<String> enabled = languages.stream()
+                .map(language -> language.trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+        for (BatchHarness harness : harnesses) {
+            // a harness listed under any of its names handles all of them
+            if (harness.languages().stream().anyMatch(enabled::contains)) {
+                harness.languages().forEach(language -> this.harnesses.put(language, harness));
+            }
+        }
+        this.runTimeout = runTimeout;
+    }
+
+    public boolean supports(String language) {
+        return language != null && harnesses.containsKey(language.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Execute the test cases in one batch.
+     * Test cases whose output could not be recovered from the batch (the program exited the process,
+     * crashed, or the output was truncated) are left out, and the caller runs them one by one.
+     *
+     * @param template  execution parameters shared by all test cases (language, version, code)
+     * @param testCases test cases in the order their results must be recorded
+     * @return outcomes for the leading test cases that were recovered from the batch output
+     */
+    public List<TestCaseOutcome> run(ExecutionDto template, List<TestCase> testCases) {
+        BatchHarness harness = harnesses.get(template.getLanguage().toLowerCase(Locale.ROOT));
+        String nonce = UUID.randomUUID().toString().replace("-", "");
+        List<PistonFile> files = harness.wrap(template.getFilename(), template.getCode(), nonce);
+        if (files.isEmpty()) {
+            return List.of();
+        }
+
+        PistonExecuteRequest request = PistonExecuteRequest.builder()
+                .language(template.getLanguage())
+                .version(template.getVersion())
+                .files(files)
+                .stdin(BatchFraming.encode(testCases.stream().map(TestCase::getInput).toList()))
+                .runTimeout(runTimeout)
+                .build();
+        PistonExecuteResponse response;
+        try {
+            response = executionService.execute(request);
+        } catch (ExecutionUnavailableException e) {
+            // falling back would only hit the same unavailable engine once per test case
+            return List.of(TestCaseOutcome.builder().testCase(testCases.get(0)).error(e).build());
+        } catch (RuntimeException e) {
+            log.warn("Batch execution failed, falling back to per test case execution: {}", e.getMessage());
+            return List.of();
+        }
+        if (response == null || response.getRun() == null
+                || (response.getCompile() != null && response.getCompile().failed())) {
+            // compilation failed, possibly because of the harness; the per test case path reports the error
+            return List.of();
+        }
+
+        List<BatchFraming.Frame> frames = BatchFraming.decode(response.getRun().getStdout(), nonce, testCases.size());
+        if (frames.size() < testCases.size()) {
+            log.info("Batch returned {} of {} test cases, the rest run individually", frames.size(), testCases.size());
+        }
+        List<TestCaseOutcome> outcomes = new ArrayList<>(frames.size());
+        for (int i = 0; i < frames.size(); i++) {
+            TestCase testCase = testCases.get(i);
+            BatchFraming.Frame frame = frames.get(i);
+            TestCaseOutcome.TestCaseOutcomeBuilder outcome = TestCaseOutcome.builder().testCase(testCase);
+            try {
+                OutputComparator comparator = OutputComparators.of(testCase.getComparisonMode() != null
+                        ? testCase.getComparisonMode() : template.getComparisonMode(), template.getEpsilon());
+                outcome.result(executionService.evaluate(frame.stdout(), frame.stderr(),
+                        testCase.getExpectedOutput(), comparator));
+            } catch (Exception e) {
+                outcome.error(e);
+            }
+            outcomes.add(outcome.build());
+        }
+        return outcomes;
+    }
+}
@@ -0,0 +1,95 @@
+package uk.ac.swansea.autograder.api.services.batch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stdin/stdout framing shared by all batch harnesses.
+ *
+ * Stdin: the number of test cases on the first line, then for each test case
+ * its input length in UTF-8 bytes on a line followed by the input itself.
+ * Stdout: for each test case a header line "nonce index stdoutLength stderrLength"
+ * followed by the captured stdout and stderr bytes.
+ */
+public final class BatchFraming {
+
+    private BatchFraming() {
+        // Prevent instantiation
+    }
+
+    public record Frame(String stdout, String stderr) {
+    }
+
+    public static String encode(List<String> inputs) {
+        StringBuilder stdin = new StringBuilder();
+        stdin.append(inputs.size()).append('\n');
+        for (String input : inputs) {
+            String value = input != null ? input : "";
+            stdin.append(value.getBytes(StandardCharsets.UTF_8).length).append('\n').append(value);
+        }
+        return stdin.toString();
+    }
+
+    /**
+     * Split the harness output back into frames.
+     * Decoding stops at the first frame that is missing or malformed, e.g. when the student program
+     * exited the process or the output was truncated, so the result may hold fewer frames than expected.
+     *
+     * @param stdout   output of the whole batch run
+     * @param nonce    marker used by the harness
+     * @param expected number of test cases in the batch
+     * @return consecutive frames starting with the first test case
+     */
+    public static List<Frame> decode(String stdout, String nonce, int expected) {
+        List<Frame> frames = new ArrayList<>(expected);
+        if (stdout == null) {
+            return frames;
+        }
+        byte[] bytes = stdout.getBytes(StandardCharsets.UTF_8);
+        int pos = indexOf(bytes, (nonce + " ").getBytes(StandardCharsets.UTF_8), 0);
+        while (pos >= 0 && frames.size() < expected) {
+            int lineEnd = indexOf(bytes, new byte[]{'\n'}, pos);
+            if (lineEnd < 0) {
+                break;
+            }
+            String[] header = new String(bytes, pos, lineEnd - pos, StandardCharsets.UTF_8).split(" ");
+            if (header.length != 4 || !header[0].equals(nonce)) {
+                break;
+            }
+            int index;
+            int stdoutLength;
+            int stderrLength;
+            try {
+                index = Integer.parseInt(header[1]);
+                stdoutLength = Integer.parseInt(header[2]);
+                stderrLength = Integer.parseInt(header[3]);
+            } catch (NumberFormatException e) {
+                break;
+            }
+            int start = lineEnd + 1;
+            if (index != frames.size() || stdoutLength < 0 || stderrLength < 0
+                    || (long) start + stdoutLength + stderrLength > bytes.length) {
+                break;
+            }
+            frames.add(new Frame(
+                    new String(bytes, start, stdoutLength, StandardCharsets.UTF_8),
+                    new String(bytes, start + stdoutLength, stderrLength, StandardCharsets.UTF_8)));
+            pos = start + stdoutLength + stderrLength;
+        }
+        return frames;
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= bytes.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
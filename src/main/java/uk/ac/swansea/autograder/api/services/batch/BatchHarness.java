@@ -0,0 +1,30 @@
+package uk.ac.swansea.autograder.api.services.batch;
+
+import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteRequest.PistonFile;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Per-language wrapper that runs the student program once per test case inside a single Piston execution.
+ *
+ * The harness reads the framed inputs from stdin (see {@link BatchFraming}), feeds each one to the
+ * student program with stdin/stdout/stderr redirected in memory, and writes one length-prefixed frame
+ * per test case to the real stdout.
+ */
+public interface BatchHarness {
+    /**
+     * @return Piston language names and aliases handled by this harness
+     */
+    Set<String> languages();
+
+    /**
+     * Build the files to send to Piston, the first one being executed.
+     *
+     * @param filename student file name
+     * @param code     student code
+     * @param nonce    random marker that starts every output frame
+     * @return files to execute, or an empty list if this code can't be wrapped
+     */
+    List<PistonFile> wrap(String filename, String code, String nonce);
+}
@@ -0,0 +1,96 @@
+package uk.ac.swansea.autograder.api.services.batch;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Runs each test case in a forked process, with stdin/stdout/stderr replaced by in-memory streams.
+ */
+@Component
+public class CBatchHarness extends NativeBatchHarness {
+    private static final String HARNESS = """
+            #include <stdio.h>
+            #include <stdlib.h>
+            #include <sys/types.h>
+            #include <sys/wait.h>
+            #include <unistd.h>
+
+            static FILE *autograder_real_out;
+            static char *autograder_out_buf, *autograder_err_buf;
+            static size_t autograder_out_len, autograder_err_len, autograder_case;
+
+            static size_t autograder_read_size(const char *data, size_t length, size_t *pos) {
+                size_t value = 0;
+                while (*pos < length && data[*pos] != '\\n') {
+                    value = value * 10 + (size_t) (data[*pos] - '0');
+                    (*pos)++;
+                }
+                (*pos)++;
+                return value;
+            }
+
+            /* runs when the student main returns or calls exit() */
+            static void autograder_finish(void) {
+                fclose(stdout);
+                fclose(stderr);
+                fprintf(autograder_real_out, "{{NONCE}} %zu %zu %zu\\n",
+                        autograder_case, autograder_out_len, autograder_err_len);
+                fwrite(autograder_out_buf, 1, autograder_out_len, autograder_real_out);
+                fwrite(autograder_err_buf, 1, autograder_err_len, autograder_real_out);
+                fflush(autograder_real_out);
+            }
+
+            int main(int argc, char **argv) {
+                size_t capacity = 1 << 16, length = 0, read;
+                char *data = malloc(capacity);
+                while ((read = fread(data + length, 1, capacity - length, stdin)) > 0) {
+                    length += read;
+                    if (length == capacity) {
+                        capacity *= 2;
+                        data = realloc(data, capacity);
+                    }
+                }
+                size_t pos = 0;
+                size_t count = autograder_read_size(data, length, &pos);
+                autograder_real_out = stdout;
+                for (size_t i = 0; i < count; i++) {
+                    size_t size = autograder_read_size(data, length, &pos);
+                    size_t start = pos;
+                    pos += size;
+                    fflush(autograder_real_out);
+                    /* a process per test case, so globals and statics start fresh every time */
+                    pid_t pid = fork();
+                    if (pid < 0) {
+                        break;
+                    }
+                    if (pid == 0) {
+                        autograder_case = i;
+                        stdin = size > 0 ? fmemopen(data + start, size, "r") : fopen("/dev/null", "r");
+                        stdout = open_memstream(&autograder_out_buf, &autograder_out_len);
+                        stderr = open_memstream(&autograder_err_buf, &autograder_err_len);
+                        atexit(autograder_finish);
+                        /* not main any more, so falling off its end returns no value; the exit code is not graded */
+                        ((int (*)(int, char **)) autograder_student_main)(argc, argv);
+                        exit(0);
+                    }
+                    int status;
+                    if (waitpid(pid, &status, 0) < 0 || !WIFEXITED(status)) {
+                        /* crashed before writing its frame, this and the remaining test cases run one by one */
+                        break;
+                    }
+                }
+                return 0;
+            }
+            """;
+
+    @Override
+    public Set<String> languages() {
+        return Set.of("c", "gcc");
+    }
+
+    @Override
+    protected String harness() {
+        return HARNESS;
+    }
+}
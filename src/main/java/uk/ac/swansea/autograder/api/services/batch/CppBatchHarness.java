@@ -0,0 +1,115 @@
+package uk.ac.swansea.autograder.api.services.batch;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Same as the C harness, a forked process per test case, and additionally points std::cin/cout/cerr at string
+ * streams. Output written through C stdio is appended after the iostream output of the same test case.
+ */
+@Component
+public class CppBatchHarness extends NativeBatchHarness {
+    private static final String HARNESS = """
+            #include <cstdio>
+            #include <cstdlib>
+            #include <iostream>
+            #include <iterator>
+            #include <sstream>
+            #include <string>
+            #include <sys/types.h>
+            #include <sys/wait.h>
+            #include <unistd.h>
+
+            static FILE *autograder_real_out;
+            static char *autograder_out_buf, *autograder_err_buf;
+            static size_t autograder_out_len, autograder_err_len, autograder_case;
+            static std::ostringstream *autograder_cpp_out, *autograder_cpp_err;
+
+            static size_t autograder_read_size(const char *data, size_t length, size_t *pos) {
+                size_t value = 0;
+                while (*pos < length && data[*pos] != '\\n') {
+                    value = value * 10 + (size_t) (data[*pos] - '0');
+                    (*pos)++;
+                }
+                (*pos)++;
+                return value;
+            }
+
+            // runs when the student main returns or calls exit()
+            static void autograder_finish() {
+                std::cout.flush();
+                std::cerr.flush();
+                std::fclose(stdout);
+                std::fclose(stderr);
+                std::string out = autograder_cpp_out->str() + std::string(autograder_out_buf, autograder_out_len);
+                std::string err = autograder_cpp_err->str() + std::string(autograder_err_buf, autograder_err_len);
+                std::fprintf(autograder_real_out, "{{NONCE}} %zu %zu %zu\\n", autograder_case, out.size(), err.size());
+                std::fwrite(out.data(), 1, out.size(), autograder_real_out);
+                std::fwrite(err.data(), 1, err.size(), autograder_real_out);
+                std::fflush(autograder_real_out);
+            }
+
+            int main(int argc, char **argv) {
+                std::string data((std::istreambuf_iterator<char>(std::cin)), std::istreambuf_iterator<char>());
+                size_t pos = 0;
+                size_t count = autograder_read_size(data.data(), data.size(), &pos);
+                autograder_real_out = stdout;
+                for (size_t i = 0; i < count; i++) {
+                    size_t size = autograder_read_size(data.data(), data.size(), &pos);
+                    size_t start = pos;
+                    pos += size;
+                    std::fflush(autograder_real_out);
+                    // a process per test case, so globals and statics start fresh every time
+                    pid_t pid = fork();
+                    if (pid < 0) {
+                        break;
+                    }
+                    if (pid == 0) {
+                        autograder_case = i;
+                        // never destroyed, the child exits from this scope
+                        std::istringstream cpp_in(data.substr(start, size));
+                        std::ostringstream cpp_out, cpp_err;
+                        autograder_cpp_out = &cpp_out;
+                        autograder_cpp_err = &cpp_err;
+                        std::cin.rdbuf(cpp_in.rdbuf());
+                        std::cout.rdbuf(cpp_out.rdbuf());
+                        std::cerr.rdbuf(cpp_err.rdbuf());
+                        std::cin.clear();
+                        stdin = size > 0 ? fmemopen(&data[start], size, "r") : fopen("/dev/null", "r");
+                        stdout = open_memstream(&autograder_out_buf, &autograder_out_len);
+                        stderr = open_memstream(&autograder_err_buf, &autograder_err_len);
+                        std::atexit(autograder_finish);
+                        // not main any more, so falling off its end returns no value; the exit code is not graded
+                        reinterpret_cast<int (*)(int, char **)>(autograder_student_main)(argc, argv);
+                        std::exit(0);
+                    }
+                    int status;
+                    if (waitpid(pid, &status, 0) < 0 || !WIFEXITED(status)) {
+                        // crashed before writing its frame, this and the remaining test cases run one by one
+                        break;
+                    }
+                }
+                return 0;
+            }
+            """;
+
+    @Override
+    public Set<String> languages() {
+        return Set.of("c++", "cpp", "g++");
+    }
+
+    /**
+     * g++ treats falling off the end of a function other than main as unreachable once optimizing and runs
+     * into whatever code follows; without optimization it just returns.
+     */
+    @Override
+    protected String studentMain() {
+        return "__attribute__((optimize(\"O0\"))) autograder_student_main";
+    }
+
+    @Override
+    protected String harness() {
+        return HARNESS;
+    }
+}
@@ -0,0 +1,189 @@
+package uk.ac.swansea.autograder.api.services.batch;
+
+import org.springframework.stereotype.Component;
+import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteRequest.PistonFile;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Piston runs Java in single-file source mode, which launches the first top-level class of the file.
+ * The harness class is therefore inserted right after the student's imports and calls the student's
+ * main class reflectively, with System.in/out/err replaced in memory for each test case.
+ *
+ * All test cases run in the same JVM, so static fields keep what earlier test cases left in them, and a
+ * program that is correct on its own can fail later test cases. Java is therefore not batched unless listed
+ * in app.execution.batch.languages.
+ */
+@Component
+public class JavaBatchHarness implements BatchHarness {
+    private static final Pattern PACKAGE = Pattern.compile("(?m)^\\s*package\\s+[\\w.]+\\s*;");
+    private static final Pattern IMPORT = Pattern.compile("(?m)^\\s*import\\s+(static\\s+)?[\\w.]+(\\.\\*)?\\s*;");
+    private static final Pattern TYPE = Pattern.compile("\\b(?:class|interface|enum|record)\\s+(\\w+)");
+    private static final Pattern MAIN = Pattern.compile("\\bstatic\\s+void\\s+main\\s*\\(");
+
+    private static final String TEMPLATE = """
+
+            class AutograderBatchHarness {
+                public static void main(String[] args) throws Exception {
+                    byte[] data = System.in.readAllBytes();
+                    int[] pos = {0};
+                    int count = readSize(data, pos);
+                    java.io.PrintStream realOut = System.out;
+                    java.io.PrintStream realErr = System.err;
+                    java.lang.reflect.Method entry = Class.forName("{{MAIN_CLASS}}").getMethod("main", String[].class);
+                    entry.setAccessible(true);
+                    for (int i = 0; i < count; i++) {
+                        int size = readSize(data, pos);
+                        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+                        java.io.ByteArrayOutputStream err = new java.io.ByteArrayOutputStream();
+                        System.setIn(new java.io.ByteArrayInputStream(data, pos[0], size));
+                        System.setOut(new java.io.PrintStream(out, true, "UTF-8"));
+                        System.setErr(new java.io.PrintStream(err, true, "UTF-8"));
+                        pos[0] += size;
+                        try {
+                            entry.invoke(null, (Object) new String[0]);
+                        } catch (java.lang.reflect.InvocationTargetException e) {
+                            e.getCause().printStackTrace();
+                        } finally {
+                            System.out.flush();
+                            System.err.flush();
+                            System.setOut(realOut);
+                            System.setErr(realErr);
+                        }
+                        String header = "{{NONCE}} " + i + " " + out.size() + " " + err.size() + "\\n";
+                        realOut.write(header.getBytes("UTF-8"));
+                        out.writeTo(realOut);
+                        err.writeTo(realOut);
+                    }
+                    realOut.flush();
+                }
+
+                private static int readSize(byte[] data, int[] pos) {
+                    int value = 0;
+                    while (data[pos[0]] != '\\n') {
+                        value = value * 10 + (data[pos[0]++] - '0');
+                    }
+                    pos[0]++;
+                    return value;
+                }
+            }
+
+            """;
+
+    @Override
+    public Set<String> languages() {
+        return Set.of("java");
+    }
+
+    @Override
+    public List<PistonFile> wrap(String filename, String code, String nonce) {
+        if (code == null || PACKAGE.matcher(code).find()) {
+            return List.of();
+        }
+        String mainClass = mainClass(code);
+        if (mainClass == null) {
+            return List.of();
+        }
+        int insertAt = 0;
+        Matcher imports = IMPORT.matcher(code);
+        while (imports.find()) {
+            insertAt = imports.end();
+        }
+        String harness = TEMPLATE
+                .replace("{{MAIN_CLASS}}", mainClass)
+                .replace("{{NONCE}}", nonce);
+        String content = code.substring(0, insertAt) + harness + code.substring(insertAt);
+        return List.of(PistonFile.builder().name(filename).content(content).build());
+    }
+
+    /**
+     * @return binary name of the class declaring the first static main, e.g. Outer$Inner, or null if none
+     */
+    static String mainClass(String code) {
+        String source = blankCommentsAndLiterals(code);
+        Matcher main = MAIN.matcher(source);
+        if (!main.find()) {
+            return null;
+        }
+        // position of the opening brace of each type body
+        Map<Integer, String> bodies = new HashMap<>();
+        Matcher type = TYPE.matcher(source);
+        while (type.find()) {
+            int body = source.indexOf('{', type.end());
+            if (body >= 0) {
+                bodies.put(body, type.group(1));
+            }
+        }
+        Deque<String> names = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        int depth = 0;
+        for (int i = 0; i < main.start(); i++) {
+            char c = source.charAt(i);
+            if (c == '{') {
+                depth++;
+                String name = bodies.get(i);
+                if (name != null) {
+                    names.push(name);
+                    depths.push(depth);
+                }
+            } else if (c == '}') {
+                if (!depths.isEmpty() && depths.peek() == depth) {
+                    names.pop();
+                    depths.pop();
+                }
+                depth--;
+            }
+        }
+        if (names.isEmpty()) {
+            return null;
+        }
+        StringBuilder binaryName = new StringBuilder();
+        names.descendingIterator().forEachRemaining(name ->
+                binaryName.append(binaryName.isEmpty() ? "" : "$").append(name));
+        return binaryName.toString();
+    }
+
+    /**
+     * @return the code with comments, string, text block and char literals replaced by spaces, same length
+     */
+    private static String blankCommentsAndLiterals(String code) {
+        char[] chars = code.toCharArray();
+        int i = 0;
+        while (i < chars.length) {
+            int end;
+            if (code.startsWith("//", i)) {
+                end = code.indexOf('\n', i);
+                end = end < 0 ? chars.length : end;
+            } else if (code.startsWith("/*", i)) {
+                end = code.indexOf("*/", i + 2);
+                end = end < 0 ? chars.length : end + 2;
+            } else if (code.startsWith("\"\"\"", i)) {
+                end = code.indexOf("\"\"\"", i + 3);
+                end = end < 0 ? chars.length : end + 3;
+            } else if (chars[i] == '"' || chars[i] == '\'') {
+                end = i + 1;
+                while (end < chars.length && chars[end] != chars[i] && chars[end] != '\n') {
+                    end += chars[end] == '\\' ? 2 : 1;
+                }
+                end = Math.min(end + 1, chars.length);
+            } else {
+                i++;
+                continue;
+            }
+            for (int j = i; j < end; j++) {
+                if (chars[j] != '\n') {
+                    chars[j] = ' ';
+                }
+            }
+            i = end;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,43 @@
+package uk.ac.swansea.autograder.api.services.batch;
+
+import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteRequest.PistonFile;
+
+import java.util.List;
+
+/**
+ * Base for C and C++ harnesses: the student's main is renamed with a macro and compiled in the same
+ * translation unit as a harness main. The harness forks a process per test case, so globals and static
+ * variables left by one test case never reach the next, and swaps the stdio streams for in-memory ones there.
+ * A test case that crashes writes no output frame; it and the ones after it are run one by one.
+ * The renamed main is an ordinary function, which does not return 0 when it falls off its end, so the harness
+ * ignores its return value.
+ */
+abstract class NativeBatchHarness implements BatchHarness {
+    private static final String PREFIX = """
+            #ifndef _GNU_SOURCE
+            #define _GNU_SOURCE
+            #endif
+            #define main {{MAIN}}
+            """;
+
+    /**
+     * @return what the student's main is renamed to
+     */
+    protected String studentMain() {
+        return "autograder_student_main";
+    }
+
+    /**
+     * @return harness main, appended after the student code, with {{NONCE}} as placeholder
+     */
+    protected abstract String harness();
+
+    @Override
+    public List<PistonFile> wrap(String filename, String code, String nonce) {
+        if (code == null) {
+            return List.of();
+        }
+        String content = PREFIX.replace("{{MAIN}}", studentMain()) + code + "\n#undef main\n" + harness().replace("{{NONCE}}", nonce);
+        return List.of(PistonFile.builder().name(filename).content(content).build());
+    }
+}
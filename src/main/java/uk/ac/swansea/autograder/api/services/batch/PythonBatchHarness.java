@@ -0,0 +1,83 @@
+package uk.ac.swansea.autograder.api.services.batch;
+
+import org.springframework.stereotype.Component;
+import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteRequest.PistonFile;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs the student script with runpy once per test case, with sys.stdin/stdout/stderr replaced in memory.
+ */
+@Component
+public class PythonBatchHarness implements BatchHarness {
+    private static final String HARNESS_FILENAME = "autograder_batch.py";
+
+    private static final String TEMPLATE = """
+            import io
+            import runpy
+            import sys
+
+
+            def _read_size(data, pos):
+                end = data.index(b"\\n", pos)
+                return int(data[pos:end]), end + 1
+
+
+            def _main():
+                data = sys.stdin.buffer.read()
+                count, pos = _read_size(data, 0)
+                real_out = sys.stdout
+                real_err = sys.stderr
+                for i in range(count):
+                    size, pos = _read_size(data, pos)
+                    chunk = data[pos:pos + size]
+                    pos += size
+                    out = io.StringIO()
+                    err = io.StringIO()
+                    sys.stdin = io.TextIOWrapper(io.BytesIO(chunk), encoding="utf-8")
+                    sys.stdout = out
+                    sys.stderr = err
+                    try:
+                        runpy.run_path("{{STUDENT_FILE}}", run_name="__main__")
+                    except SystemExit as e:
+                        if isinstance(e.code, str):
+                            err.write(e.code + "\\n")
+                    except BaseException:
+                        import traceback
+                        traceback.print_exc(file=err)
+                    finally:
+                        sys.stdin = sys.__stdin__
+                        sys.stdout = real_out
+                        sys.stderr = real_err
+                    out_bytes = out.getvalue().encode("utf-8")
+                    err_bytes = err.getvalue().encode("utf-8")
+                    header = "{{NONCE}} %d %d %d\\n" % (i, len(out_bytes), len(err_bytes))
+                    real_out.buffer.write(header.encode("utf-8"))
+                    real_out.buffer.write(out_bytes)
+                    real_out.buffer.write(err_bytes)
+                real_out.flush()
+
+
+            _main()
+            """;
+
+    @Override
+    public Set<String> languages() {
+        return Set.of("python", "python3", "py", "py3");
+    }
+
+    @Override
+    public List<PistonFile> wrap(String filename, String code, String nonce) {
+        // the file name is embedded in a string literal, only accept plain names
+        if (filename == null || !filename.matches("[\\w.-]+") || filename.equals(HARNESS_FILENAME)) {
+            return List.of();
+        }
+        String harness = TEMPLATE
+                .replace("{{STUDENT_FILE}}", filename)
+                .replace("{{NONCE}}", nonce);
+        return List.of(
+                PistonFile.builder().name(HARNESS_FILENAME).content(harness).build(),
+                PistonFile.builder().name(filename).content(code).build());
+    }
+}
@@ -0,0 +1,9 @@
+package uk.ac.swansea.autograder.api.services.compare;
+
+/**
+ * Decides whether the output of a run matches the expected output of a test case.
+ */
+@FunctionalInterface
+public interface OutputComparator {
+    boolean matches(CharSequence actual, CharSequence expected);
+}
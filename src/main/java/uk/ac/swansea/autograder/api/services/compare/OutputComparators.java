@@ -0,0 +1,191 @@
+package uk.ac.swansea.autograder.api.services.compare;
+
+import uk.ac.swansea.autograder.api.entities.Problem.ComparisonMode;
+
+/**
+ * Output comparators for each {@link ComparisonMode}.
+ *
+ * All of them walk both character sequences in place; no trimmed or split copies are built.
+ * FLOAT_EPSILON only parses a pair of tokens when they differ textually.
+ */
+public final class OutputComparators {
+    public static final double DEFAULT_EPSILON = 1e-6;
+
+    private static final OutputComparator EXACT = OutputComparators::exact;
+    private static final OutputComparator IGNORE_TRAILING_WHITESPACE = OutputComparators::ignoreTrailingWhitespace;
+    private static final OutputComparator TOKEN = (actual, expected) -> tokens(actual, expected, -1);
+
+    private OutputComparators() {
+    }
+
+    /**
+     * @param mode    comparison mode, EXACT when null
+     * @param epsilon tolerance for FLOAT_EPSILON, {@link #DEFAULT_EPSILON} when null
+     */
+    public static OutputComparator of(ComparisonMode mode, Double epsilon) {
+        if (mode == null) {
+            return EXACT;
+        }
+        return switch (mode) {
+            case EXACT -> EXACT;
+            case IGNORE_TRAILING_WHITESPACE -> IGNORE_TRAILING_WHITESPACE;
+            case TOKEN -> TOKEN;
+            case FLOAT_EPSILON -> {
+                double tolerance = epsilon != null && epsilon >= 0 ? epsilon : DEFAULT_EPSILON;
+                yield (actual, expected) -> tokens(actual, expected, tolerance);
+            }
+        };
+    }
+
+    /**
+     * @return the output without its final line terminator (\n or \r\n), as it is stored and shown
+     */
+    public static String stripTrailingNewline(String output) {
+        if (output == null) {
+            return null;
+        }
+        int end = contentEnd(output);
+        return end == output.length() ? output : output.substring(0, end);
+    }
+
+    /**
+     * Equal character by character, apart from one final line terminator on either side.
+     */
+    static boolean exact(CharSequence actual, CharSequence expected) {
+        if (actual == null || expected == null) {
+            return actual == expected;
+        }
+        int length = contentEnd(actual);
+        return length == contentEnd(expected) && regionEquals(actual, 0, expected, 0, length);
+    }
+
+    /**
+     * Equal line by line once trailing whitespace (including \r) is ignored on every line,
+     * and trailing blank lines are ignored.
+     */
+    static boolean ignoreTrailingWhitespace(CharSequence actual, CharSequence expected) {
+        if (actual == null || expected == null) {
+            return actual == expected;
+        }
+        int i = 0;
+        int j = 0;
+        while (true) {
+            int actualEnd = lineEnd(actual, i);
+            int expectedEnd = lineEnd(expected, j);
+            int actualLength = trimEnd(actual, i, actualEnd) - i;
+            int expectedLength = trimEnd(expected, j, expectedEnd) - j;
+            if (actualLength != expectedLength || !regionEquals(actual, i, expected, j, actualLength)) {
+                return false;
+            }
+            i = actualEnd + 1;
+            j = expectedEnd + 1;
+            if (i > actual.length()) {
+                return isBlank(expected, j);
+            }
+            if (j > expected.length()) {
+                return isBlank(actual, i);
+            }
+        }
+    }
+
+    /**
+     * Equal as whitespace separated token sequences. With a non-negative epsilon, numeric tokens
+     * match when they differ by at most epsilon, absolutely or relative to the expected value.
+     */
+    static boolean tokens(CharSequence actual, CharSequence expected, double epsilon) {
+        if (actual == null || expected == null) {
+            return actual == expected;
+        }
+        int i = skipWhitespace(actual, 0);
+        int j = skipWhitespace(expected, 0);
+        while (i < actual.length() && j < expected.length()) {
+            int actualEnd = tokenEnd(actual, i);
+            int expectedEnd = tokenEnd(expected, j);
+            int length = actualEnd - i;
+            boolean same = length == expectedEnd - j && regionEquals(actual, i, expected, j, length);
+            if (!same && (epsilon < 0 || !closeEnough(actual, i, actualEnd, expected, j, expectedEnd, epsilon))) {
+                return false;
+            }
+            i = skipWhitespace(actual, actualEnd);
+            j = skipWhitespace(expected, expectedEnd);
+        }
+        return i >= actual.length() && j >= expected.length();
+    }
+
+    private static boolean closeEnough(CharSequence actual, int actualStart, int actualEnd,
+                                       CharSequence expected, int expectedStart, int expectedEnd, double epsilon) {
+        double a;
+        double e;
+        try {
+            a = Double.parseDouble(actual.subSequence(actualStart, actualEnd).toString());
+            e = Double.parseDouble(expected.subSequence(expectedStart, expectedEnd).toString());
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+        if (Double.isNaN(a) || Double.isNaN(e)) {
+            return false;
+        }
+        double difference = Math.abs(a - e);
+        return difference <= epsilon || difference <= epsilon * Math.abs(e);
+    }
+
+    private static int contentEnd(CharSequence s) {
+        int end = s.length();
+        if (end > 0 && s.charAt(end - 1) == '\n') {
+            end--;
+            if (end > 0 && s.charAt(end - 1) == '\r') {
+                end--;
+            }
+        }
+        return end;
+    }
+
+    private static boolean regionEquals(CharSequence a, int aStart, CharSequence b, int bStart, int length) {
+        for (int k = 0; k < length; k++) {
+            if (a.charAt(aStart + k) != b.charAt(bStart + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lineEnd(CharSequence s, int from) {
+        int i = from;
+        while (i < s.length() && s.charAt(i) != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int trimEnd(CharSequence s, int start, int end) {
+        while (end > start && Character.isWhitespace(s.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isBlank(CharSequence s, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(CharSequence s, int from) {
+        int i = from;
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int tokenEnd(CharSequence s, int from) {
+        int i = from;
+        while (i < s.length() && !Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
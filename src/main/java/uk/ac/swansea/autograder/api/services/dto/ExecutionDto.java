@@ -4,11 +4,12 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import uk.ac.swansea.autograder.api.entities.Problem;
 
 import jakarta.validation.constraints.NotBlank;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class ExecutionDto {
@@ -22,4 +23,6 @@ public class ExecutionDto {
     private String code;
     private String input;
     private String expectedOutput;
+    private Problem.ComparisonMode comparisonMode;
+    private Double epsilon;
 }
@@ -0,0 +1,31 @@
+package uk.ac.swansea.autograder.api.services.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import uk.ac.swansea.autograder.api.entities.TestCase;
+
+/**
+ * Outcome of running a single test case: either an execution result or the error that stopped it.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TestCaseOutcome {
+    private TestCase testCase;
+    private ExecutionResultDto result;
+    private Exception error;
+
+    public boolean hasError() {
+        return error != null;
+    }
+
+    /**
+     * @return true if the test case errored or produced the wrong output
+     */
+    public boolean isFailure() {
+        return hasError() || !Boolean.TRUE.equals(result.getIsValid());
+    }
+}
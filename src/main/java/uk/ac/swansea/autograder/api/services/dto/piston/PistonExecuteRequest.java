@@ -1,5 +1,7 @@
 package uk.ac.swansea.autograder.api.services.dto.piston;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -14,11 +16,17 @@ import java.util.List;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class PistonExecuteRequest {
     private String language;
     private String version;
     private List<PistonFile> files;
     private String stdin;
+    /**
+     * Run stage timeout in milliseconds, Piston's default is used when null.
+     */
+    @JsonProperty("run_timeout")
+    private Integer runTimeout;
     
     @Data
     @Builder
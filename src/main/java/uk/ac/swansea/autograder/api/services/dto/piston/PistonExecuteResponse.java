@@ -9,6 +9,10 @@ import lombok.Data;
 public class PistonExecuteResponse {
     private String language;
     private String version;
+    /**
+     * Only present for compiled languages; when compilation fails, run is missing.
+     */
+    private RunResult compile;
     private RunResult run;
     
     @Data
@@ -18,6 +22,13 @@ public class PistonExecuteResponse {
         private Integer code;
         private String signal;
         private String output;
+
+        /**
+         * @return true if the stage exited with a non-zero code or was killed
+         */
+        public boolean failed() {
+            return (code != null && code != 0) || signal != null;
+        }
     }
 }
 
@@ -0,0 +1,116 @@
+package uk.ac.swansea.autograder.api.services.guard;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD concurrency limiter.
+ *
+ * Every request that completes in time while the limit is in use grows the limit by 1/limit,
+ * roughly one slot per limit's worth of requests. A failed or slow request multiplies it by the backoff ratio.
+ * The limit therefore settles around the concurrency the downstream service can sustain.
+ */
+public class AdaptiveLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long latencyThresholdMillis) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * Wait for a free slot.
+     *
+     * @param timeoutMillis how long to wait at most
+     * @return false if no slot became free in time
+     */
+    public boolean acquire(long timeoutMillis) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = available.awaitNanos(remaining);
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Free a slot and adjust the limit with the outcome of the request.
+     *
+     * @param rttNanos time the request took
+     * @param dropped  true if the request failed because of the downstream service
+     */
+    public void release(long rttNanos, boolean dropped) {
+        lock.lock();
+        try {
+            boolean saturated = inFlight >= limit / 2;
+            inFlight--;
+            if (dropped || rttNanos > latencyThresholdNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (saturated) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Free a slot after a request that completed but whose time says nothing about the downstream service,
+     * e.g. code that ran until it was killed. It counts as a request that completed in time.
+     */
+    public void releaseUntimed() {
+        release(0, false);
+    }
+
+    /**
+     * Free a slot without a sample, for requests that were never sent.
+     */
+    public void cancel() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
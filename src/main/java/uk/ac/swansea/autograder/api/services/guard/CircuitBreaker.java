@@ -0,0 +1,133 @@
+package uk.ac.swansea.autograder.api.services.guard;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Count based circuit breaker.
+ *
+ * CLOSED: calls pass and their outcomes fill a sliding window; once the window holds at least
+ * minimumCalls outcomes and the failure rate reaches the threshold, the breaker opens.
+ * OPEN: calls are rejected until openDuration has passed.
+ * HALF_OPEN: a few trial calls pass; all succeeding closes the breaker, any failure opens it again.
+ */
+public class CircuitBreaker {
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationMillis;
+    private final int halfOpenCalls;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int index;
+    private int recorded;
+    private int failures;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold,
+                          long openDurationMillis, int halfOpenCalls, LongSupplier clock) {
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationMillis = openDurationMillis;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if the call may go ahead, in which case its outcome must be reported
+     * with {@link #onResult(boolean)} or {@link #cancel()}
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openDurationMillis) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermits = halfOpenCalls;
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                return false;
+            }
+            halfOpenPermits--;
+        }
+        return true;
+    }
+
+    public synchronized void onResult(boolean failed) {
+        switch (state) {
+            case HALF_OPEN -> {
+                if (failed) {
+                    open();
+                } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                    close();
+                }
+            }
+            case CLOSED -> {
+                record(failed);
+                if (recorded >= minimumCalls && (double) failures / recorded >= failureRateThreshold) {
+                    open();
+                }
+            }
+            case OPEN -> {
+                // late result of a call started before the breaker opened
+            }
+        }
+    }
+
+    /**
+     * Give back an acquired call that was never made.
+     */
+    public synchronized void cancel() {
+        if (state == State.HALF_OPEN) {
+            halfOpenPermits++;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return milliseconds until an open breaker lets trial calls through, 0 otherwise
+     */
+    public synchronized long retryAfterMillis() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, openDurationMillis - (clock.getAsLong() - openedAt));
+    }
+
+    private void record(boolean failed) {
+        if (recorded == window.length) {
+            if (window[index]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        window[index] = failed;
+        if (failed) {
+            failures++;
+        }
+        index = (index + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        index = 0;
+        recorded = 0;
+        failures = 0;
+    }
+}
@@ -0,0 +1,34 @@
+package uk.ac.swansea.autograder.api.services.guard;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint (/actuator/piston) showing the limiter and circuit breaker state.
+ * Needs the VIEW_METRICS permission, see WebSecurityConfig.
+ */
+@Component
+@Endpoint(id = "piston")
+public class PistonEndpoint {
+    private final PistonGuard pistonGuard;
+
+    public PistonEndpoint(PistonGuard pistonGuard) {
+        this.pistonGuard = pistonGuard;
+    }
+
+    @ReadOperation
+    public Map<String, Object> piston() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("breaker", pistonGuard.getBreakerState());
+        state.put("retryAfterMillis", pistonGuard.getRetryAfterMillis());
+        state.put("limit", pistonGuard.getLimit());
+        state.put("inFlight", pistonGuard.getInFlight());
+        state.put("limiterRejections", pistonGuard.getLimiterRejections());
+        state.put("breakerRejections", pistonGuard.getBreakerRejections());
+        return state;
+    }
+}
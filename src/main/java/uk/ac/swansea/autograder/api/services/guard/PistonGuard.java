@@ -0,0 +1,127 @@
+package uk.ac.swansea.autograder.api.services.guard;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.ac.swansea.autograder.exceptions.ExecutionUnavailableException;
+
+/**
+ * Admission in front of Piston: a circuit breaker that stops sending work while Piston keeps failing,
+ * and an adaptive limiter that finds how much concurrency it can take.
+ * Callers that cannot get in receive an {@link ExecutionUnavailableException} so the submission is retried later
+ * instead of being graded against an overloaded engine.
+ */
+@Component
+public class PistonGuard {
+    private final AdaptiveLimiter limiter;
+    private final CircuitBreaker breaker;
+    private final long maxWaitMillis;
+    private final Counter limiterRejections;
+    private final Counter breakerRejections;
+
+    public PistonGuard(MeterRegistry meterRegistry,
+                       @Value("${piston.limiter.initialLimit:16}") int initialLimit,
+                       @Value("${piston.limiter.minLimit:2}") int minLimit,
+                       @Value("${piston.limiter.maxLimit:128}") int maxLimit,
+                       @Value("${piston.limiter.backoffRatio:0.9}") double backoffRatio,
+                       @Value("${piston.limiter.latencyThreshold:10000}") long latencyThreshold,
+                       @Value("${piston.limiter.maxWait:30000}") long maxWaitMillis,
+                       @Value("${piston.breaker.windowSize:20}") int windowSize,
+                       @Value("${piston.breaker.minimumCalls:10}") int minimumCalls,
+                       @Value("${piston.breaker.failureRateThreshold:0.5}") double failureRateThreshold,
+                       @Value("${piston.breaker.openDuration:30000}") long openDuration,
+                       @Value("${piston.breaker.halfOpenCalls:3}") int halfOpenCalls) {
+        this.limiter = new AdaptiveLimiter(initialLimit, minLimit, maxLimit, backoffRatio, latencyThreshold);
+        this.breaker = new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold,
+                openDuration, halfOpenCalls, System::currentTimeMillis);
+        this.maxWaitMillis = maxWaitMillis;
+
+        Gauge.builder("piston.limiter.limit", limiter, AdaptiveLimiter::getLimit)
+                .description("Current adaptive concurrency limit")
+                .register(meterRegistry);
+        Gauge.builder("piston.limiter.in_flight", limiter, AdaptiveLimiter::getInFlight)
+                .description("Requests admitted by the limiter and not yet completed")
+                .register(meterRegistry);
+        Gauge.builder("piston.breaker.state", breaker, b -> b.getState().ordinal())
+                .description("Circuit breaker state: 0 closed, 1 open, 2 half open")
+                .register(meterRegistry);
+        this.limiterRejections = Counter.builder("piston.limiter.rejections")
+                .description("Requests shed because the concurrency limit was reached")
+                .register(meterRegistry);
+        this.breakerRejections = Counter.builder("piston.breaker.rejections")
+                .description("Requests rejected while the circuit breaker was open")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Wait for admission, at most maxWait.
+     *
+     * @return start timestamp to hand back to {@link #release(long, boolean)}
+     * @throws ExecutionUnavailableException if the breaker is open or no slot became free in time
+     */
+    public long acquire() {
+        if (!breaker.tryAcquire()) {
+            breakerRejections.increment();
+            throw new ExecutionUnavailableException("Piston circuit breaker is open", breaker.retryAfterMillis());
+        }
+        boolean acquired;
+        try {
+            acquired = limiter.acquire(maxWaitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            breaker.cancel();
+            limiterRejections.increment();
+            throw new ExecutionUnavailableException("Piston concurrency limit reached", 0);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Report the outcome of an admitted request.
+     *
+     * @param start                 value returned by {@link #acquire()}
+     * @param infrastructureFailure true if Piston failed (unreachable, timeout, 5xx), false if it answered
+     */
+    public void release(long start, boolean infrastructureFailure) {
+        limiter.release(System.nanoTime() - start, infrastructureFailure);
+        breaker.onResult(infrastructureFailure);
+    }
+
+    /**
+     * Report a request Piston answered whose duration was set by the submitted code rather than by Piston,
+     * e.g. a run killed at its timeout. It does not count as slow.
+     */
+    public void releaseUntimed() {
+        limiter.releaseUntimed();
+        breaker.onResult(false);
+    }
+
+    public CircuitBreaker.State getBreakerState() {
+        return breaker.getState();
+    }
+
+    public long getRetryAfterMillis() {
+        return breaker.retryAfterMillis();
+    }
+
+    public int getLimit() {
+        return limiter.getLimit();
+    }
+
+    public int getInFlight() {
+        return limiter.getInFlight();
+    }
+
+    public double getLimiterRejections() {
+        return limiterRejections.count();
+    }
+
+    public double getBreakerRejections() {
+        return breakerRejections.count();
+    }
+}
@@ -1,11 +1,13 @@
 package uk.ac.swansea.autograder.config;
 
+import com.auth0.jwt.interfaces.DecodedJWT;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -14,9 +16,15 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
+import uk.ac.swansea.autograder.general.services.TokenVersionService;
 
 import java.io.IOException;
 
+/**
+ * Authenticates requests by their token. Stateless, the user is rebuilt from the permissions the token
+ * carries and only the version of the user's tokens is looked up, from a cache. Tokens issued without
+ * permissions, and every token with stateless off, load the user with its roles instead.
+ */
 @Slf4j
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
@@ -25,6 +33,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private UserDetailsService userDetailsService;
 
+    @Autowired
+    private TokenVersionService tokenVersionService;
+
+    @Value("${app.security.jwt.stateless:true}")
+    private boolean stateless;
+
     @Override
     protected void doFilterInternal(@NonNull HttpServletRequest request,
                                     @NonNull HttpServletResponse response,
@@ -32,10 +46,9 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             String jwt = getJwtFromRequest(request);
 
-            if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
-                String username = tokenProvider.getUserUsernameFromJWT(jwt);
-
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            DecodedJWT decodedJwt = StringUtils.hasText(jwt) ? tokenProvider.verifyToken(jwt) : null;
+            UserDetails userDetails = decodedJwt == null ? null : getUserDetails(decodedJwt);
+            if (userDetails != null) {
                 UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(userDetails,
                         null, userDetails.getAuthorities());
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -48,6 +61,21 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * @return user of the verified token, or null if the token was invalidated since it was issued
+     */
+    private UserDetails getUserDetails(DecodedJWT jwt) {
+        MyUserDetails user = stateless ? tokenProvider.getUserDetailsFromJWT(jwt) : null;
+        if (user == null) {
+            return userDetailsService.loadUserByUsername(jwt.getClaim("username").asString());
+        }
+        if (!tokenVersionService.isCurrent(user.getId(), user.getTokenVersion())) {
+            log.debug("Token of userId=#{} was invalidated", user.getId());
+            return null;
+        }
+        return user;
+    }
+
     private String getJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader("Authorization");
         if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
@@ -6,13 +6,17 @@ import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTDecodeException;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.exceptions.TokenExpiredException;
+import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 
 @Component
 @Slf4j
@@ -24,6 +28,17 @@ public class JwtTokenProvider {
     @Value("${app.security.jwt.expirationMinutes}")
     private int jwtExpirationInMinutes;
 
+    private JWTVerifier verifier;
+
+    @PostConstruct
+    public void init() {
+        verifier = JWT.require(Algorithm.HMAC256(jwtSecret.getBytes())).build();
+    }
+
+    /**
+     * The token carries the permissions of the user and the version of its tokens, so requests are
+     * authenticated from its claims alone, see {@link #getUserDetailsFromJWT}.
+     */
     public String generateUserToken(Authentication authentication) {
 
         MyUserDetails user = (MyUserDetails) authentication.getPrincipal();
@@ -37,33 +52,46 @@ public class JwtTokenProvider {
                 .withClaim("id", user.getId())
                 .withClaim("username", user.getUsername())
                 .withClaim("role", user.getRoleName())
+                .withClaim("ver", user.getTokenVersion())
+                .withClaim("permissions", user.getPermissions().stream().sorted().toList())
                 .sign(Algorithm.HMAC256(jwtSecret.getBytes()));
     }
 
     public String getUserUsernameFromJWT(String token) {
-        JWTVerifier verifier = JWT.require(Algorithm.HMAC256(jwtSecret.getBytes()))
-                .build();    //
-
         DecodedJWT jwt = verifier.verify(token);
 
         return jwt.getClaim("username").asString();
     }
 
     public String getUserRoleFromJWT(String token) {
-        JWTVerifier verifier = JWT.require(Algorithm.HMAC256(jwtSecret.getBytes()))
-                .build();    //
-
         DecodedJWT jwt = verifier.verify(token);
 
         return jwt.getClaim("role").asString();
     }
 
+    /**
+     * @return user of a verified token, or null if the token was issued without permissions and version
+     */
+    public MyUserDetails getUserDetailsFromJWT(DecodedJWT jwt) {
+        Claim version = jwt.getClaim("ver");
+        List<String> permissions = jwt.getClaim("permissions").asList(String.class);
+        if (version.isMissing() || permissions == null) {
+            return null;
+        }
+        return new MyUserDetails(jwt.getClaim("id").asLong(), jwt.getClaim("username").asString(),
+                jwt.getClaim("role").asString(), version.asInt(), new HashSet<>(permissions));
+    }
+
     public boolean validateToken(String authToken) {
+        return verifyToken(authToken) != null;
+    }
+
+    /**
+     * @return the verified token, or null if it is invalid or expired
+     */
+    public DecodedJWT verifyToken(String authToken) {
         try {
-            JWTVerifier verifier = JWT.require(Algorithm.HMAC256(jwtSecret.getBytes()))
-                    .build();
-            verifier.verify(authToken);
-            return true;
+            return verifier.verify(authToken);
         } catch (JWTDecodeException ex) {
             log.error("Invalid JWT token");
         } catch (TokenExpiredException ex) {
@@ -73,6 +101,6 @@ public class JwtTokenProvider {
         } catch (IllegalArgumentException ex) {
             log.error("JWT claims string is empty.");
         }
-        return false;
+        return null;
     }
 }
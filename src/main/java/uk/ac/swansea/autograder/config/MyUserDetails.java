@@ -3,48 +3,90 @@ package uk.ac.swansea.autograder.config;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import uk.ac.swansea.autograder.general.entities.Permission;
 import uk.ac.swansea.autograder.general.entities.Role;
 import uk.ac.swansea.autograder.general.entities.User;
 
 import java.util.Collection;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * The authenticated user, either loaded with its roles at login or rebuilt from the claims of a token,
+ * in which case there is no password.
+ */
 public class MyUserDetails implements UserDetails {
 
-    private final User user;
+    private final Long id;
+    private final String username;
+    private final String password;
+    private final boolean enabled;
+    private final String roleName;
+    private final Integer tokenVersion;
+    private final Set<String> permissions;
 
     public MyUserDetails(User user) {
-        this.user = user;
+        this(user.getId(), user.getUsername(), user.getPassword(), user.isEnabled(), roleName(user),
+                user.getTokenVersion(), user.getRoles().stream()
+                        .flatMap(role -> role.getPermissions().stream())
+                        .map(Permission::getName)
+                        .collect(Collectors.toSet()));
+    }
+
+    public MyUserDetails(Long id, String username, String roleName, Integer tokenVersion, Set<String> permissions) {
+        this(id, username, null, true, roleName, tokenVersion, permissions);
+    }
+
+    private MyUserDetails(Long id, String username, String password, boolean enabled, String roleName,
+                          Integer tokenVersion, Set<String> permissions) {
+        this.id = id;
+        this.username = username;
+        this.password = password;
+        this.enabled = enabled;
+        this.roleName = roleName;
+        this.tokenVersion = tokenVersion;
+        this.permissions = Set.copyOf(permissions);
     }
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
-        return user.getRoles().stream()
-            .flatMap(role -> role.getPermissions().stream())
-            .map(permission -> new SimpleGrantedAuthority(permission.getName()))
+        return permissions.stream()
+            .map(SimpleGrantedAuthority::new)
             .collect(Collectors.toSet());
     }
 
     @Override
     public String getPassword() {
-        return user.getPassword();
+        return password;
     }
 
     @Override
     public String getUsername() {
-        return user.getUsername();
+        return username;
     }
 
     public Long getId() {
-        return user.getId();
+        return id;
     }
 
     @Override
     public boolean isEnabled() {
-        return user.isEnabled();
+        return enabled;
     }
 
     public String getRoleName() {
+        return roleName;
+    }
+
+    public Integer getTokenVersion() {
+        return tokenVersion;
+    }
+
+    public Set<String> getPermissions() {
+        return permissions;
+    }
+
+    private static String roleName(User user) {
         Role role = user.getRoles().stream()
                 .findFirst()
                 .orElse(null);
@@ -53,4 +95,4 @@ public class MyUserDetails implements UserDetails {
         }
         return role.getName();
     }
-}
\ No newline at end of file
+}
@@ -18,6 +18,8 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 import uk.ac.swansea.autograder.handlers.CustomAccessDeniedHandler;
 import uk.ac.swansea.autograder.handlers.JwtAuthenticationEntryPoint;
 
+import static uk.ac.swansea.autograder.general.enums.PermissionEnum.VIEW_METRICS;
+
 @Configuration
 @EnableWebSecurity
 @EnableMethodSecurity(securedEnabled = true)  // replaces @EnableGlobalMethodSecurity
@@ -66,8 +68,11 @@ public class WebSecurityConfig {
                                 "/v3/api-docs/**",
                                 "/swagger-ui/**",
                                 "/swagger-ui.html",
-                                "/actuator/**"
+                                "/actuator/health/**",
+                                "/actuator/info"
                                 ).permitAll()
+                        // per node queue depths, Piston routing, cache and recovery counters, limiter state
+                        .requestMatchers("/actuator/metrics/**", "/actuator/piston").hasAuthority(VIEW_METRICS)
                         .anyRequest().authenticated()
                 )
                 .exceptionHandling(exc -> exc
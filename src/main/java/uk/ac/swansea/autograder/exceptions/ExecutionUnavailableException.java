@@ -0,0 +1,30 @@
+package uk.ac.swansea.autograder.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The execution engine could not run the code: it is unreachable, overloaded, or the circuit is open.
+ * Unlike compilation or runtime errors this says nothing about the submission, which should be retried later.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ExecutionUnavailableException extends RuntimeException {
+    private final long retryAfterMillis;
+
+    public ExecutionUnavailableException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public ExecutionUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+        this.retryAfterMillis = 0;
+    }
+
+    /**
+     * @return how long to wait before retrying, 0 if unknown
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
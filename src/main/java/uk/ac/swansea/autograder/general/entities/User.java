@@ -20,6 +20,8 @@ public class User {
     private String fullname;
     private String password;
     private boolean enabled;
+    // incremented to invalidate the tokens issued before, see TokenVersionService
+    private Integer tokenVersion = 0;
 
     @ManyToMany(fetch = FetchType.EAGER)
     @JoinTable(
@@ -53,6 +53,13 @@ public final class PermissionEnum {
     // Submission Management (alphabetically sorted)
     // ---------------------------------------------------------
     public static final String CREATE_SUBMISSION = "CREATE_SUBMISSION";
+    public static final String REPLAY_DEAD_LETTER = "REPLAY_DEAD_LETTER";
+    public static final String VIEW_DEAD_LETTER = "VIEW_DEAD_LETTER";
     public static final String VIEW_OWN_SUBMISSION = "VIEW_OWN_SUBMISSION";
     public static final String VIEW_SUBMISSION = "VIEW_SUBMISSION";
+
+    // ---------------------------------------------------------
+    // Monitoring
+    // ---------------------------------------------------------
+    public static final String VIEW_METRICS = "VIEW_METRICS";
 }
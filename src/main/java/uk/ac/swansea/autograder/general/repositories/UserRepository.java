@@ -1,6 +1,7 @@
 package uk.ac.swansea.autograder.general.repositories;
 
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
@@ -8,12 +9,29 @@ import org.springframework.data.repository.query.Param;
 import uk.ac.swansea.autograder.general.entities.User;
 
 import java.util.List;
+import java.util.Optional;
 
 
 public interface UserRepository extends PagingAndSortingRepository<User, Long>, CrudRepository<User, Long> {
     @Query("SELECT u FROM User u WHERE u.username = :username")
     User getUserByUsername(@Param("username") String username);
 
+    // List rather than Page, so no count query runs
+    List<User> findAllBy(Pageable pageable);
+
+    List<User> findAllByIdLessThan(Long afterId, Pageable pageable);
+
     @Query("SELECT u FROM User u LEFT JOIN u.roles role WHERE role.id = ?1")
     List<User> findAllUsersByRoleId(Integer role, Pageable pageable);
+
+    /**
+     * @return token version of the user, none if the user is gone or disabled
+     */
+    @Query("SELECT u.tokenVersion FROM User u WHERE u.id = :id AND u.enabled = true")
+    Optional<Integer> findTokenVersionById(Long id);
+
+    @Modifying
+    @Query("UPDATE User u SET u.tokenVersion = u.tokenVersion + 1 WHERE u.id IN " +
+            "(SELECT ur.id FROM User ur JOIN ur.roles role WHERE role.id = :roleId)")
+    int incrementTokenVersionsByRoleId(Integer roleId);
 }
\ No newline at end of file
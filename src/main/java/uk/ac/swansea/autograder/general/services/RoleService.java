@@ -2,6 +2,7 @@ package uk.ac.swansea.autograder.general.services;
 
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import uk.ac.swansea.autograder.api.controllers.dto.NewRoleDto;
 import uk.ac.swansea.autograder.api.controllers.dto.PermissionDto;
 import uk.ac.swansea.autograder.api.controllers.dto.RoleDto;
@@ -18,10 +19,13 @@ import java.util.Set;
 public class RoleService {
     private final RoleRepository roleRepository;
     private final PermissionService permissionService;
+    private final TokenVersionService tokenVersionService;
 
-    public RoleService(RoleRepository roleRepository, PermissionService permissionService) {
+    public RoleService(RoleRepository roleRepository, PermissionService permissionService,
+                       TokenVersionService tokenVersionService) {
         this.roleRepository = roleRepository;
         this.permissionService = permissionService;
+        this.tokenVersionService = tokenVersionService;
     }
 
     public Role getRoleByName(String name) throws ResourceNotFoundException {
@@ -47,6 +51,10 @@ public class RoleService {
         return roleRepository.findById(id).orElseThrow(ResourceNotFoundException::new);
     }
 
+    /**
+     * Tokens of the users with the role carry its name and permissions and are invalidated.
+     */
+    @Transactional
     public Role updateRole(RoleDto roleDto) throws ResourceNotFoundException {
         Role role = getRole(roleDto.getId());
         role.setName(roleDto.getName());
@@ -56,6 +64,7 @@ public class RoleService {
             permissions.add(permission);
         }
         role.setPermissions(permissions);
+        tokenVersionService.revokeByRoleId(role.getId());
         return roleRepository.save(role);
     }
 }
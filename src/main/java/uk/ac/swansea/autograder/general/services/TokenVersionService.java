@@ -0,0 +1,85 @@
+package uk.ac.swansea.autograder.general.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.ac.swansea.autograder.general.entities.User;
+import uk.ac.swansea.autograder.general.repositories.UserRepository;
+
+import java.time.Duration;
+
+/**
+ * Versions of the tokens of each user, so tokens issued before a change of the user's roles or of a role's
+ * permissions are no longer accepted, even though the permissions they carry are still signed.
+ *
+ * The current versions are cached for versionCacheTtl, so authenticating a request reads the database at most
+ * once per user in that time. A change made on this node takes effect at once; other nodes keep accepting the
+ * old tokens until their cached version expires.
+ */
+@Service
+public class TokenVersionService {
+    // cached for users that are gone or disabled, no token matches it
+    private static final int REVOKED = -1;
+
+    private final UserRepository userRepository;
+    private final Cache<Long, Integer> versions;
+
+    public TokenVersionService(UserRepository userRepository,
+                               @Value("${app.security.jwt.versionCacheMaxSize:10000}") long versionCacheMaxSize,
+                               @Value("${app.security.jwt.versionCacheTtl:30000}") long versionCacheTtl) {
+        this.userRepository = userRepository;
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(versionCacheMaxSize)
+                .expireAfterWrite(Duration.ofMillis(versionCacheTtl))
+                .build();
+    }
+
+    /**
+     * @return true if a token of the user with the given version is still valid
+     */
+    public boolean isCurrent(Long userId, Integer tokenVersion) {
+        if (userId == null || tokenVersion == null) {
+            return false;
+        }
+        int current = versions.get(userId, id -> userRepository.findTokenVersionById(id).orElse(REVOKED));
+        return current != REVOKED && current == tokenVersion;
+    }
+
+    /**
+     * Invalidate the tokens of the user. The caller saves the user.
+     */
+    public void revoke(User user) {
+        user.setTokenVersion(user.getTokenVersion() + 1);
+        afterCommit(() -> versions.invalidate(user.getId()));
+    }
+
+    /**
+     * Invalidate the tokens of every user with the role.
+     */
+    @Transactional
+    public void revokeByRoleId(Integer roleId) {
+        userRepository.incrementTokenVersionsByRoleId(roleId);
+        afterCommit(versions::invalidateAll);
+    }
+
+    /**
+     * Drop cached versions only once the new ones are committed, so a request in between cannot cache
+     * the old version again.
+     */
+    private static void afterCommit(Runnable invalidation) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidation.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidation.run();
+            }
+        });
+    }
+}
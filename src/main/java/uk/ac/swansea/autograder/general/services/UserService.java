@@ -3,6 +3,7 @@ package uk.ac.swansea.autograder.general.services;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import uk.ac.swansea.autograder.api.controllers.dto.*;
 import uk.ac.swansea.autograder.exceptions.ResourceNotFoundException;
 import uk.ac.swansea.autograder.general.entities.Role;
@@ -18,15 +19,24 @@ public class UserService {
     private final BCryptPasswordEncoder passwordEncoder;
     private final UserRepository userRepository;
     private final RoleService roleService;
+    private final TokenVersionService tokenVersionService;
 
-    public UserService(BCryptPasswordEncoder passwordEncoder, UserRepository userRepository, RoleService roleService) {
+    public UserService(BCryptPasswordEncoder passwordEncoder, UserRepository userRepository, RoleService roleService,
+                       TokenVersionService tokenVersionService) {
         this.passwordEncoder = passwordEncoder;
         this.userRepository = userRepository;
         this.roleService = roleService;
+        this.tokenVersionService = tokenVersionService;
     }
 
-    public List<User> getUsers(Pageable pageable) {
-        return userRepository.findAll(pageable).toList();
+    /**
+     * @param afterId id of the last user of the previous page, null to page by offset
+     */
+    public List<User> getUsers(Long afterId, Pageable pageable) {
+        if (afterId != null) {
+            return userRepository.findAllByIdLessThan(afterId, pageable);
+        }
+        return userRepository.findAllBy(pageable);
     }
 
     public User createUser(NewUserDto newUserDto) throws ResourceNotFoundException {
@@ -43,13 +53,19 @@ public class UserService {
                 .orElseThrow(ResourceNotFoundException::new);
     }
 
+    @Transactional
     public User updateUser(UserDto userDto) throws ResourceNotFoundException {
         User user = getUser(userDto.getId());
+        if (!user.getUsername().equals(userDto.getUsername())) {
+            // tokens carry the username
+            tokenVersionService.revoke(user);
+        }
         user.setUsername(userDto.getUsername());
         user.setFullname(userDto.getFullname());
         return userRepository.save(user);
     }
 
+    @Transactional
     public User updateUserRoles(UserDto userDto) throws ResourceNotFoundException {
         User user = getUser(userDto.getId());
         Set<Role> roles = new HashSet<>();
@@ -58,6 +74,7 @@ public class UserService {
             roles.add(role);
         }
         user.setRoles(roles);
+        tokenVersionService.revoke(user);
         return userRepository.save(user);
     }
 }
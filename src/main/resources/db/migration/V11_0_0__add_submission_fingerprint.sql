@@ -0,0 +1,6 @@
+ALTER TABLE problems ADD COLUMN test_case_version INT NOT NULL DEFAULT 0;
+
+ALTER TABLE submissions ADD COLUMN code_hash varchar(64) NULL;
+ALTER TABLE submissions ADD COLUMN test_case_version INT NULL;
+
+CREATE INDEX submissions_idx_problem_id_user_id_code_hash on submissions (problem_id, user_id, code_hash);
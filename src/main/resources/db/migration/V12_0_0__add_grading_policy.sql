@@ -0,0 +1,6 @@
+ALTER TABLE problems ADD COLUMN grading_policy INT NOT NULL DEFAULT 0;
+ALTER TABLE problems ADD COLUMN max_failures INT NULL;
+
+ALTER TABLE submissions ADD COLUMN skipped_test_cases INT NULL;
+
+ALTER TABLE submission_details ADD COLUMN skipped boolean NOT NULL DEFAULT false;
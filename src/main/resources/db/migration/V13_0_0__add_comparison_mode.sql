@@ -0,0 +1,4 @@
+ALTER TABLE problems ADD COLUMN comparison_mode INT NOT NULL DEFAULT 0;
+ALTER TABLE problems ADD COLUMN epsilon DOUBLE PRECISION NULL;
+
+ALTER TABLE test_cases ADD COLUMN comparison_mode INT NULL;
@@ -0,0 +1 @@
+ALTER TABLE problems ADD COLUMN scheduling_weight INT NOT NULL DEFAULT 1;
@@ -0,0 +1 @@
+ALTER TABLE problems ADD COLUMN assessment INT NOT NULL DEFAULT 0;
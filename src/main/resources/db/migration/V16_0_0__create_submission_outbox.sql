@@ -0,0 +1,13 @@
+ALTER TABLE problems ADD COLUMN test_case_count INT NOT NULL DEFAULT 0;
+UPDATE problems p SET test_case_count = (SELECT count(*) FROM test_cases t WHERE t.problem_id = p.id);
+
+CREATE TABLE submission_outbox
+(
+    id            BIGSERIAL PRIMARY KEY,
+    submission_id BIGINT  NOT NULL,
+    user_id       BIGINT  NULL,
+    weight        INT     NOT NULL,
+    lane          INT     NOT NULL,
+    deferred      BOOLEAN NOT NULL DEFAULT false,
+    CONSTRAINT submission_outbox_fk_submission_id FOREIGN KEY (submission_id) REFERENCES submissions (id)
+);
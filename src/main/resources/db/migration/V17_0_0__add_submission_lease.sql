@@ -0,0 +1,16 @@
+ALTER TABLE submissions ADD COLUMN lease_owner varchar(128) NULL;
+ALTER TABLE submissions ADD COLUMN lease_expires_at TIMESTAMP WITH TIME ZONE NULL;
+
+CREATE INDEX submissions_idx_status_lease_expires_at on submissions (status, lease_expires_at);
+
+-- submissions left behind before leases existed: NEW ones never got queued, PROCESSING ones may never finish.
+-- They are queued again by the recovery sweeper; one that is also still on the queue is graded only once.
+UPDATE submissions s
+SET status               = 2,
+    total_test_cases     = p.test_case_count,
+    processed_test_cases = 0,
+    correct_test_cases   = 0
+FROM problems p
+WHERE s.problem_id = p.id
+  AND s.status = 0;
+UPDATE submissions SET lease_expires_at = now() WHERE status = 2;
@@ -0,0 +1,22 @@
+-- gradings of the submission that failed or never finished, reset when it is regraded or replayed
+ALTER TABLE submissions ADD COLUMN grading_attempts INT NOT NULL DEFAULT 0;
+
+CREATE TABLE submission_dead_letters
+(
+    id            BIGSERIAL PRIMARY KEY,
+    submission_id BIGINT                   NOT NULL,
+    problem_id    BIGINT                   NOT NULL,
+    user_id       BIGINT                   NULL,
+    attempts      INT                      NOT NULL,
+    error         varchar(1024)            NULL,
+    created_at    TIMESTAMP WITH TIME ZONE NOT NULL,
+    CONSTRAINT submission_dead_letters_fk_submission_id FOREIGN KEY (submission_id) REFERENCES submissions (id)
+);
+
+CREATE UNIQUE INDEX submission_dead_letters_idx_submission_id on submission_dead_letters (submission_id);
+
+INSERT INTO permissions (name) VALUES ('VIEW_DEAD_LETTER');
+INSERT INTO permissions (name) VALUES ('REPLAY_DEAD_LETTER');
+
+INSERT INTO roles_permissions (role_id, permission_id)--ADMIN
+SELECT 1, id FROM permissions WHERE name IN ('VIEW_DEAD_LETTER', 'REPLAY_DEAD_LETTER');
@@ -0,0 +1,7 @@
+-- ids handed out in blocks of 50 (Hibernate pooled optimizer), so detail rows can be inserted in JDBC batches
+CREATE SEQUENCE submission_details_seq INCREMENT BY 50 OWNED BY submission_details.id;
+-- the first block starts after every existing id
+SELECT setval('submission_details_seq', COALESCE(MAX(id), 0) + 50, false) FROM submission_details;
+
+ALTER TABLE submission_details ALTER COLUMN id SET DEFAULT nextval('submission_details_seq');
+DROP SEQUENCE submission_details_id_seq;
@@ -0,0 +1,14 @@
+-- Listings are sorted by id descending and paged either by offset or after the id of the last row seen.
+-- With id as the last column, each filtered listing reads its page straight off one index.
+-- They replace the single column indexes they start with.
+DROP INDEX submissions_idx_problem_id;
+DROP INDEX problems_idx_user_id;
+CREATE INDEX submissions_idx_problem_id_id on submissions (problem_id, id DESC);
+CREATE INDEX submissions_idx_user_id_id on submissions (user_id, id DESC);
+CREATE INDEX submissions_idx_problem_id_user_id_id on submissions (problem_id, user_id, id DESC);
+
+DROP INDEX problems_fk_user_id;
+CREATE INDEX problems_idx_user_id_id on problems (user_id, id DESC);
+
+DROP INDEX test_cases_idx_problem_id;
+CREATE INDEX test_cases_idx_problem_id_id on test_cases (problem_id, id DESC);
@@ -0,0 +1,3 @@
+-- Tokens carry the version of their user and stop being accepted once it is incremented,
+-- i.e. when the user's roles or a role's permissions change.
+ALTER TABLE users ADD COLUMN token_version INT NOT NULL DEFAULT 0;
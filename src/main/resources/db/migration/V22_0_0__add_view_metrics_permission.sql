@@ -0,0 +1,5 @@
+-- actuator endpoints other than health and info show the internals of a node
+INSERT INTO permissions (name) VALUES ('VIEW_METRICS');
+
+INSERT INTO roles_permissions (role_id, permission_id)--ADMIN
+SELECT 1, id FROM permissions WHERE name = 'VIEW_METRICS';
@@ -0,0 +1,68 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class FairQueueTest {
+
+	private final FairQueue<String> queue = new FairQueue<>(1);
+
+	private List<String> drain() {
+		List<String> items = new ArrayList<>();
+		String item;
+		while ((item = queue.poll()) != null) {
+			items.add(item);
+		}
+		return items;
+	}
+
+	@Test
+	void alternatesBetweenUsers() {
+		for (int i = 0; i < 5; i++) {
+			queue.add(1L, 1, "spam" + i);
+		}
+		queue.add(2L, 1, "other");
+		assertThat(queue.flowCount()).isEqualTo(2);
+		assertThat(drain()).containsExactly("spam0", "other", "spam1", "spam2", "spam3", "spam4");
+		assertThat(queue.size()).isZero();
+	}
+
+	@Test
+	void keepsOrderWithinUser() {
+		queue.add(1L, 1, "a");
+		queue.add(1L, 1, "b");
+		queue.add(1L, 1, "c");
+		assertThat(drain()).containsExactly("a", "b", "c");
+	}
+
+	@Test
+	void sharesByWeight() {
+		queue.add(1L, 2, "heavy0");
+		queue.add(1L, 2, "heavy1");
+		for (int i = 0; i < 4; i++) {
+			queue.add(2L, 1, "light" + i);
+		}
+		assertThat(drain()).containsExactly("light0", "heavy0", "light1", "light2", "heavy1", "light3");
+	}
+
+	@Test
+	void idleUserDoesNotSaveCredit() {
+		queue.add(1L, 1, "first");
+		assertThat(queue.poll()).isEqualTo("first");
+		queue.add(2L, 1, "a0");
+		queue.add(2L, 1, "a1");
+		queue.add(1L, 1, "b0");
+		queue.add(1L, 1, "b1");
+		assertThat(drain()).containsExactly("a0", "b0", "a1", "b1");
+	}
+
+	@Test
+	void emptyQueueReturnsNull() {
+		assertThat(queue.poll()).isNull();
+		assertThat(queue.flowCount()).isZero();
+	}
+}
@@ -0,0 +1,52 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LaneQueueTest {
+
+	private static List<String> drain(LaneQueue<String> queue) {
+		List<String> items = new ArrayList<>();
+		String item;
+		while ((item = queue.poll()) != null) {
+			items.add(item);
+		}
+		return items;
+	}
+
+	@Test
+	void strictServesHigherLanesFirst() {
+		LaneQueue<String> queue = new LaneQueue<>(LaneQueue.Policy.STRICT, new int[0]);
+		queue.add(SubmissionLane.REGRADE, 1L, 1, "regrade0");
+		queue.add(SubmissionLane.REGRADE, 1L, 1, "regrade1");
+		queue.add(SubmissionLane.PRACTICE, 2L, 1, "practice");
+		queue.add(SubmissionLane.EXAM, 3L, 1, "exam");
+		assertThat(queue.size(SubmissionLane.REGRADE)).isEqualTo(2);
+		assertThat(drain(queue)).containsExactly("exam", "practice", "regrade0", "regrade1");
+	}
+
+	@Test
+	void weightedSharesBetweenBusyLanes() {
+		LaneQueue<String> queue = new LaneQueue<>(LaneQueue.Policy.WEIGHTED, new int[] {3, 1, 1});
+		for (int i = 0; i < 4; i++) {
+			queue.add(SubmissionLane.EXAM, 1L, 1, "exam" + i);
+			queue.add(SubmissionLane.REGRADE, 2L, 1, "regrade" + i);
+		}
+		assertThat(drain(queue)).containsExactly("exam0", "exam1", "regrade0", "exam2", "exam3",
+				"regrade1", "regrade2", "regrade3");
+	}
+
+	@Test
+	void fairWithinLane() {
+		LaneQueue<String> queue = new LaneQueue<>(LaneQueue.Policy.STRICT, new int[0]);
+		queue.add(SubmissionLane.PRACTICE, 1L, 1, "a0");
+		queue.add(SubmissionLane.PRACTICE, 1L, 1, "a1");
+		queue.add(SubmissionLane.PRACTICE, 2L, 1, "b0");
+		assertThat(queue.flowCount()).isEqualTo(2);
+		assertThat(drain(queue)).containsExactly("a0", "b0", "a1");
+	}
+}
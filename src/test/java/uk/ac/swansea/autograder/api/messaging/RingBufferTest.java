@@ -0,0 +1,87 @@
+package uk.ac.swansea.autograder.api.messaging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class RingBufferTest {
+
+	@Test
+	void roundsCapacityUpToPowerOfTwo() {
+		assertThat(new RingBuffer<String>(1000).capacity()).isEqualTo(1024);
+		assertThat(new RingBuffer<String>(1024).capacity()).isEqualTo(1024);
+		assertThat(new RingBuffer<String>(1).capacity()).isEqualTo(2);
+	}
+
+	@Test
+	void keepsOrderAndRejectsWhenFull() {
+		RingBuffer<String> ring = new RingBuffer<>(4);
+		for (int i = 0; i < 4; i++) {
+			assertThat(ring.offer("item" + i)).isTrue();
+		}
+		assertThat(ring.offer("overflow")).isFalse();
+		assertThat(ring.size()).isEqualTo(4);
+
+		assertThat(ring.poll()).isEqualTo("item0");
+		assertThat(ring.offer("item4")).isTrue();
+		List<String> items = new ArrayList<>();
+		String item;
+		while ((item = ring.poll()) != null) {
+			items.add(item);
+		}
+		assertThat(items).containsExactly("item1", "item2", "item3", "item4");
+		assertThat(ring.size()).isZero();
+	}
+
+	@Test
+	void deliversEveryItemOnceWithConcurrentProducersAndConsumers() throws InterruptedException {
+		RingBuffer<Integer> ring = new RingBuffer<>(64);
+		int producers = 4;
+		int consumers = 4;
+		int perProducer = 20_000;
+		Set<Integer> received = ConcurrentHashMap.newKeySet();
+		AtomicInteger duplicates = new AtomicInteger();
+		AtomicInteger remaining = new AtomicInteger(producers * perProducer);
+		CountDownLatch done = new CountDownLatch(producers + consumers);
+
+		for (int p = 0; p < producers; p++) {
+			int first = p * perProducer;
+			new Thread(() -> {
+				for (int i = first; i < first + perProducer; i++) {
+					while (!ring.offer(i)) {
+						Thread.yield();
+					}
+				}
+				done.countDown();
+			}).start();
+		}
+		for (int c = 0; c < consumers; c++) {
+			new Thread(() -> {
+				while (remaining.get() > 0) {
+					Integer item = ring.poll();
+					if (item == null) {
+						Thread.yield();
+						continue;
+					}
+					if (!received.add(item)) {
+						duplicates.incrementAndGet();
+					}
+					remaining.decrementAndGet();
+				}
+				done.countDown();
+			}).start();
+		}
+
+		done.await();
+		assertThat(duplicates).hasValue(0);
+		assertThat(received).hasSize(producers * perProducer);
+		assertThat(ring.poll()).isNull();
+	}
+}
@@ -0,0 +1,67 @@
+package uk.ac.swansea.autograder.api.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.swansea.autograder.api.services.dto.piston.PistonExecuteResponse;
+
+class PistonResponseDecoderTest {
+
+	private static final String RESPONSE = "{\"language\":\"python\",\"version\":\"3.10.0\","
+			+ "\"run\":{\"stdout\":\"h\\u00e9llo \\ud83d\\ude00\\n\",\"stderr\":\"\",\"code\":0,\"signal\":null,"
+			+ "\"output\":\"ignored\",\"extra\":[1,{\"stdout\":\"nested\"}]},"
+			+ "\"compile\":{\"stdout\":\"\",\"stderr\":\"error\",\"code\":1,\"signal\":null}}";
+
+	@Test
+	void decodesFieldsFedInSmallChunks() throws IOException {
+		byte[] bytes = RESPONSE.getBytes(StandardCharsets.UTF_8);
+		PistonResponseDecoder decoder = new PistonResponseDecoder(1024);
+		for (int i = 0; i < bytes.length; i += 3) {
+			decoder.feed(bytes, i, Math.min(3, bytes.length - i));
+		}
+		PistonExecuteResponse response = decoder.finish();
+
+		assertThat(response.getLanguage()).isEqualTo("python");
+		assertThat(response.getRun().getStdout()).isEqualTo("héllo 😀\n");
+		assertThat(response.getRun().getCode()).isZero();
+		assertThat(response.getRun().getSignal()).isNull();
+		assertThat(response.getRun().getOutput()).isNull();
+		assertThat(response.getCompile().getStderr()).isEqualTo("error");
+		assertThat(response.getCompile().getCode()).isEqualTo(1);
+		assertThat(decoder.isTruncated()).isFalse();
+	}
+
+	@Test
+	void truncatesFieldsAtTheCapWithoutSplittingCharacters() throws IOException {
+		byte[] bytes = RESPONSE.getBytes(StandardCharsets.UTF_8);
+		PistonResponseDecoder decoder = new PistonResponseDecoder(2);
+		decoder.feed(bytes, 0, bytes.length);
+
+		assertThat(decoder.finish().getRun().getStdout()).isEqualTo("h" + PistonResponseDecoder.TRUNCATED_MARKER);
+		assertThat(decoder.isTruncated()).isTrue();
+	}
+
+	@Test
+	void keepsErrorMessage() throws IOException {
+		byte[] bytes = "{\"message\":\"runtime is unknown\"}".getBytes(StandardCharsets.UTF_8);
+		PistonResponseDecoder decoder = new PistonResponseDecoder(1024);
+		decoder.feed(bytes, 0, bytes.length);
+
+		assertThat(decoder.finish().getRun()).isNull();
+		assertThat(decoder.getMessage()).isEqualTo("runtime is unknown");
+	}
+
+	@Test
+	void rejectsIncompleteBody() throws IOException {
+		byte[] bytes = RESPONSE.getBytes(StandardCharsets.UTF_8);
+		PistonResponseDecoder decoder = new PistonResponseDecoder(1024);
+		decoder.feed(bytes, 0, 40);
+
+		assertThatThrownBy(decoder::finish).isInstanceOf(IOException.class);
+	}
+}
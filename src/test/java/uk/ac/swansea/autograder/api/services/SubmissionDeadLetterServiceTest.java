@@ -0,0 +1,29 @@
+package uk.ac.swansea.autograder.api.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class SubmissionDeadLetterServiceTest {
+
+	@Test
+	void doublesDelayPerAttempt() {
+		assertThat(SubmissionDeadLetterService.backoff(1, 1000, 60000, 0)).isEqualTo(500);
+		assertThat(SubmissionDeadLetterService.backoff(2, 1000, 60000, 0)).isEqualTo(1000);
+		assertThat(SubmissionDeadLetterService.backoff(3, 1000, 60000, 0)).isEqualTo(2000);
+	}
+
+	@Test
+	void jitterStaysWithinUpperHalf() {
+		for (double random = 0; random < 1; random += 0.01) {
+			long delay = SubmissionDeadLetterService.backoff(4, 1000, 60000, random);
+			assertThat(delay).isBetween(4000L, 8000L);
+		}
+	}
+
+	@Test
+	void capsAtMaxDelay() {
+		assertThat(SubmissionDeadLetterService.backoff(50, 1000, 60000, 0.9999)).isBetween(59000L, 60000L);
+		assertThat(SubmissionDeadLetterService.backoff(50, 1000, 60000, 0)).isEqualTo(30000);
+	}
+}
@@ -0,0 +1,76 @@
+package uk.ac.swansea.autograder.api.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import uk.ac.swansea.autograder.api.entities.Problem;
+import uk.ac.swansea.autograder.api.entities.Submission;
+import uk.ac.swansea.autograder.api.entities.TestCase;
+import uk.ac.swansea.autograder.api.messaging.SubmissionOutboxRelay;
+import uk.ac.swansea.autograder.api.services.dto.ExecutionResultDto;
+import uk.ac.swansea.autograder.api.services.dto.TestCaseOutcome;
+import uk.ac.swansea.autograder.exceptions.ExecutionUnavailableException;
+
+class SubmissionExecutionServiceTest {
+
+	private final ProblemService problemService = mock(ProblemService.class);
+
+	private final TestCaseService testCaseService = mock(TestCaseService.class);
+
+	private final SubmissionDetailService submissionDetailService = mock(SubmissionDetailService.class);
+
+	private final SubmissionService submissionService = mock(SubmissionService.class);
+
+	private final TestCaseExecutor testCaseExecutor = mock(TestCaseExecutor.class);
+
+	private final SubmissionLeaseService submissionLeaseService = mock(SubmissionLeaseService.class);
+
+	private final SubmissionDeadLetterService submissionDeadLetterService = mock(SubmissionDeadLetterService.class);
+
+	private final SubmissionExecutionService service = new SubmissionExecutionService(problemService,
+			testCaseService, mock(ExecutionService.class), submissionDetailService, submissionService,
+			mock(SubmissionOutboxRelay.class), testCaseExecutor, mock(SubmissionAdmissionService.class),
+			submissionLeaseService, submissionDeadLetterService, mock(PlatformTransactionManager.class));
+
+	@Test
+	void unavailableEngineLeavesSubmissionUntouched() throws Exception {
+		Submission submission = new Submission();
+		submission.setId(1L);
+		submission.setProblemId(2L);
+		submission.setStatus(Submission.Status.PROCESSING);
+		submission.setTotalTestCases(2);
+		Problem problem = new Problem();
+		problem.setId(2L);
+		TestCase first = new TestCase();
+		TestCase second = new TestCase();
+		given(submissionLeaseService.acquire(1L)).willReturn(true);
+		given(submissionService.getSubmission(1L)).willReturn(submission);
+		given(problemService.getProblem(2L)).willReturn(problem);
+		given(testCaseService.getAllTestCasesByProblemId(2L)).willReturn(List.of(first, second));
+		given(testCaseExecutor.run(any(), any(), anyInt())).willReturn(List.of(
+				TestCaseOutcome.builder().testCase(first)
+						.result(ExecutionResultDto.builder().output("").isValid(true).build()).build(),
+				TestCaseOutcome.builder().testCase(second)
+						.error(new ExecutionUnavailableException("Piston is down", 0)).build()));
+
+		assertThatThrownBy(() -> service.runSubmission(1L)).isInstanceOf(ExecutionUnavailableException.class);
+
+		verify(submissionDetailService, never()).createSubmissionDetails(any());
+		verify(submissionService, never()).recordVerdict(any(), any());
+		verify(submissionDeadLetterService, never()).quarantine(any(), any());
+		verify(submissionLeaseService).release(1L);
+		assertThat(submission.getStatus()).isEqualTo(Submission.Status.PROCESSING);
+		assertThat(submission.getGrade()).isNull();
+		assertThat(submission.getProcessedTestCases()).isNull();
+	}
+}
@@ -0,0 +1,172 @@
+package uk.ac.swansea.autograder.api.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+import uk.ac.swansea.autograder.api.entities.Problem;
+import uk.ac.swansea.autograder.api.entities.Submission;
+import uk.ac.swansea.autograder.api.messaging.SubmissionLane;
+import uk.ac.swansea.autograder.api.messaging.SubmissionOutboxRelay;
+import uk.ac.swansea.autograder.api.messaging.SubmissionSender;
+import uk.ac.swansea.autograder.api.repositories.ProblemRepository;
+import uk.ac.swansea.autograder.api.repositories.SubmissionRepository;
+
+class SubmissionLeaseServiceTest {
+
+	private static final String OWNER = "node-a";
+
+	private static final long LEASE_TTL = 60000;
+
+	private final SubmissionRepository submissionRepository = mock(SubmissionRepository.class);
+
+	private final ProblemRepository problemRepository = mock(ProblemRepository.class);
+
+	private final SubmissionService submissionService = mock(SubmissionService.class);
+
+	private final SubmissionSender submissionSender = mock(SubmissionSender.class);
+
+	private final SubmissionOutboxRelay submissionOutboxRelay = mock(SubmissionOutboxRelay.class);
+
+	private final SubmissionLeaseService leaseService = new SubmissionLeaseService(submissionRepository,
+			problemRepository, submissionService, submissionSender, submissionOutboxRelay,
+			mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), OWNER, LEASE_TTL, 20, 100);
+
+	private void leaseUpdates(int updated) {
+		given(submissionRepository.acquireLease(any(), any(), any(), any(), any())).willReturn(updated);
+	}
+
+	@Test
+	void acquireTakesLeaseUnderNodeName() {
+		leaseUpdates(1);
+
+		assertThat(leaseService.acquire(1L)).isTrue();
+
+		verify(submissionRepository).acquireLease(eq(1L), eq(Submission.Status.PROCESSING), eq(OWNER), any(), any());
+	}
+
+	@Test
+	void acquireRejectsSubmissionAlreadyGradedHere() {
+		leaseUpdates(1);
+
+		assertThat(leaseService.acquire(1L)).isTrue();
+		// a second queue entry of the same submission, the lease owner alone would let it through
+		assertThat(leaseService.acquire(1L)).isFalse();
+
+		verify(submissionRepository, times(1)).acquireLease(any(), any(), any(), any(), any());
+	}
+
+	@Test
+	void acquireLeaseHeldElsewhereCanBeRetried() {
+		leaseUpdates(0);
+		assertThat(leaseService.acquire(1L)).isFalse();
+
+		leaseUpdates(1);
+		assertThat(leaseService.acquire(1L)).isTrue();
+	}
+
+	@Test
+	void failedAcquireCanBeRetried() {
+		given(submissionRepository.acquireLease(any(), any(), any(), any(), any()))
+				.willThrow(new QueryTimeoutException("timeout"))
+				.willReturn(1);
+
+		assertThatThrownBy(() -> leaseService.acquire(1L)).isInstanceOf(QueryTimeoutException.class);
+		assertThat(leaseService.acquire(1L)).isTrue();
+	}
+
+	@Test
+	void releasedSubmissionCanBeAcquiredAgain() {
+		leaseUpdates(1);
+
+		assertThat(leaseService.acquire(1L)).isTrue();
+		leaseService.release(1L);
+		assertThat(leaseService.acquire(1L)).isTrue();
+	}
+
+	@Test
+	void heartbeatRenewsOnlySubmissionsBeingGraded() {
+		leaseUpdates(1);
+		leaseService.acquire(1L);
+		leaseService.acquire(2L);
+		leaseService.release(2L);
+
+		leaseService.heartbeat();
+
+		verify(submissionRepository).renewLeases(eq(List.of(1L)), eq(OWNER), any(), eq(Submission.Status.PROCESSING));
+	}
+
+	@Test
+	void holdKeepsLeaseForDelayWithoutHeartbeats() {
+		leaseUpdates(1);
+		leaseService.acquire(1L);
+		Instant before = Instant.now();
+
+		leaseService.hold(1L, 5000);
+		leaseService.heartbeat();
+
+		ArgumentCaptor<Instant> expiresAt = ArgumentCaptor.forClass(Instant.class);
+		verify(submissionRepository).renewLeases(eq(List.of(1L)), eq(OWNER), expiresAt.capture(),
+				eq(Submission.Status.PROCESSING));
+		assertThat(expiresAt.getValue()).isAfterOrEqualTo(before.plusMillis(5000 + LEASE_TTL));
+		// held by this node again once the retry is due
+		assertThat(leaseService.acquire(1L)).isTrue();
+	}
+
+	@Test
+	void sweepWaitsForBacklogToDrain() {
+		given(submissionRepository.countByStatusAndLeaseExpiresAtBefore(any(), any())).willReturn(5L);
+		given(submissionSender.backlog(SubmissionLane.PRACTICE)).willReturn(100L);
+
+		leaseService.sweep();
+
+		verify(submissionRepository, never()).lockExpiredLeases(anyInt(), any(), anyInt());
+	}
+
+	@Test
+	void sweepQueuesExpiredSubmissionsAgain() {
+		Submission submission = new Submission();
+		submission.setId(1L);
+		submission.setProblemId(2L);
+		Problem problem = new Problem();
+		problem.setId(2L);
+		given(submissionRepository.countByStatusAndLeaseExpiresAtBefore(any(), any())).willReturn(1L);
+		given(submissionSender.backlog(SubmissionLane.PRACTICE)).willReturn(0L);
+		given(submissionRepository.lockExpiredLeases(eq(Submission.Status.PROCESSING.ordinal()), any(), eq(20)))
+				.willReturn(List.of(1L));
+		given(submissionRepository.findAllById(List.of(1L))).willReturn(List.of(submission));
+		given(problemRepository.findAllById(Set.of(2L))).willReturn(List.of(problem));
+
+		leaseService.sweep();
+
+		verify(submissionService).requeueSubmissions(List.of(submission), Map.of(2L, problem));
+		verify(submissionOutboxRelay).wakeUp();
+	}
+
+	@Test
+	void sweepDoesNothingWithoutExpiredLeases() {
+		given(submissionRepository.countByStatusAndLeaseExpiresAtBefore(any(), any())).willReturn(0L);
+
+		leaseService.sweep();
+
+		verify(submissionSender, never()).backlog(any());
+		verify(submissionRepository, never()).lockExpiredLeases(anyInt(), any(), anyInt());
+	}
+}
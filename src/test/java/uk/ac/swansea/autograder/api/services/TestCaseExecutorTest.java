@@ -0,0 +1,166 @@
+package uk.ac.swansea.autograder.api.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.swansea.autograder.api.entities.TestCase;
+import uk.ac.swansea.autograder.api.services.batch.BatchExecutionService;
+import uk.ac.swansea.autograder.api.services.dto.ExecutionDto;
+import uk.ac.swansea.autograder.api.services.dto.ExecutionResultDto;
+import uk.ac.swansea.autograder.api.services.dto.TestCaseOutcome;
+import uk.ac.swansea.autograder.exceptions.ExecutionUnavailableException;
+
+/**
+ * Test case inputs script the stubbed engine: "ok" and "wrong" answer, "error" fails the run,
+ * "unavailable" stands for Piston being down. A number after a colon delays the answer by that many ms.
+ */
+class TestCaseExecutorTest {
+
+	private final ExecutionService executionService = mock(ExecutionService.class);
+
+	private final BatchExecutionService batchExecutionService = mock(BatchExecutionService.class);
+
+	@BeforeEach
+	void setUp() throws Exception {
+		given(executionService.submit(any())).willAnswer(invocation -> answer(invocation.getArgument(0)));
+		given(executionService.submitAsync(any())).willAnswer(invocation -> answerAsync(invocation.getArgument(0)));
+	}
+
+	private TestCaseExecutor executor(TestCaseExecutor.Mode mode) {
+		return new TestCaseExecutor(executionService, batchExecutionService, mode, false, 4, 16,
+				true, List.of("c"), 1000);
+	}
+
+	private static ExecutionDto template(String language) {
+		return ExecutionDto.builder().language(language).version("1").filename("main").code("code").build();
+	}
+
+	private static List<TestCase> testCases(String... inputs) {
+		return IntStream.range(0, inputs.length)
+				.mapToObj(i -> {
+					TestCase testCase = new TestCase();
+					testCase.setId((long) i + 1);
+					testCase.setInput(inputs[i]);
+					testCase.setExpectedOutput("");
+					return testCase;
+				})
+				.toList();
+	}
+
+	private static ExecutionResultDto answer(ExecutionDto dto) throws Exception {
+		String input = dto.getInput().split(":")[0];
+		return switch (input) {
+			case "error" -> throw new Exception("runtime error");
+			case "unavailable" -> throw new ExecutionUnavailableException("Piston is down", 0);
+			default -> ExecutionResultDto.builder().output(input).isValid(input.equals("ok")).build();
+		};
+	}
+
+	private static CompletableFuture<ExecutionResultDto> answerAsync(ExecutionDto dto) {
+		String[] input = dto.getInput().split(":");
+		long delay = input.length > 1 ? Long.parseLong(input[1]) : 0;
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return answer(dto);
+			} catch (Exception e) {
+				// as ExecutionService.submitAsync fails
+				throw new CompletionException(e);
+			}
+		}, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+	}
+
+	private static List<Long> ids(List<TestCaseOutcome> outcomes) {
+		return outcomes.stream().map(outcome -> outcome.getTestCase().getId()).toList();
+	}
+
+	@Test
+	void parallelOutcomesKeepTestCaseOrder() {
+		List<TestCaseOutcome> outcomes = executor(TestCaseExecutor.Mode.PARALLEL)
+				.run(template("python"), testCases("ok:300", "wrong:150", "ok:0"), 0);
+
+		assertThat(ids(outcomes)).containsExactly(1L, 2L, 3L);
+		assertThat(outcomes).extracting(outcome -> outcome.getResult().getIsValid())
+				.containsExactly(true, false, true);
+	}
+
+	@Test
+	void sequentialStopsAtFirstError() throws Exception {
+		List<TestCaseOutcome> outcomes = executor(TestCaseExecutor.Mode.SEQUENTIAL)
+				.run(template("python"), testCases("ok", "error", "ok"), 0);
+
+		assertThat(ids(outcomes)).containsExactly(1L, 2L);
+		assertThat(outcomes.get(1).hasError()).isTrue();
+		verify(executionService, times(2)).submit(any());
+	}
+
+	@Test
+	void parallelStopsAtFirstErrorInTestCaseOrder() {
+		// the later error finishes first, the earlier one decides where grading stops
+		List<TestCaseOutcome> outcomes = executor(TestCaseExecutor.Mode.PARALLEL)
+				.run(template("python"), testCases("ok:100", "error:100", "error:0", "ok:0"), 0);
+
+		assertThat(ids(outcomes)).containsExactly(1L, 2L);
+		assertThat(outcomes.get(1).getError()).hasMessageContaining("runtime error");
+	}
+
+	@Test
+	void sequentialStopsAfterFailureBudget() throws Exception {
+		List<TestCaseOutcome> outcomes = executor(TestCaseExecutor.Mode.SEQUENTIAL)
+				.run(template("python"), testCases("wrong", "ok", "wrong", "wrong", "ok"), 2);
+
+		assertThat(ids(outcomes)).containsExactly(1L, 2L, 3L);
+		verify(executionService, times(3)).submit(any());
+	}
+
+	@Test
+	void parallelStopsAfterFailureBudget() {
+		List<TestCaseOutcome> outcomes = executor(TestCaseExecutor.Mode.PARALLEL)
+				.run(template("python"), testCases("ok:200", "wrong:100", "wrong:0", "wrong:0", "ok:0"), 2);
+
+		assertThat(ids(outcomes)).containsExactly(1L, 2L, 3L);
+		assertThat(outcomes).noneMatch(TestCaseOutcome::hasError);
+	}
+
+	@Test
+	void compileErrorStopsBeforeFanOut() throws Exception {
+		willThrow(new Exception("error: expected ';'")).given(executionService).compile(any(), any());
+
+		List<TestCaseOutcome> outcomes = executor(TestCaseExecutor.Mode.PARALLEL)
+				.run(template("c"), testCases("ok", "ok", "ok"), 0);
+
+		assertThat(ids(outcomes)).containsExactly(1L);
+		assertThat(outcomes.get(0).getError()).hasMessageContaining("expected ';'");
+		verify(executionService, never()).submitAsync(any());
+	}
+
+	@Test
+	void interpretedLanguageIsNotCompileChecked() throws Exception {
+		executor(TestCaseExecutor.Mode.PARALLEL).run(template("python"), testCases("ok", "ok"), 0);
+
+		verify(executionService, never()).compile(any(), any());
+	}
+
+	@Test
+	void unavailableEngineEndsOutcomes() throws Exception {
+		List<TestCaseOutcome> outcomes = executor(TestCaseExecutor.Mode.SEQUENTIAL)
+				.run(template("python"), testCases("ok", "unavailable", "ok"), 0);
+
+		assertThat(ids(outcomes)).containsExactly(1L, 2L);
+		assertThat(outcomes.get(1).getError()).isInstanceOf(ExecutionUnavailableException.class);
+		verify(executionService, times(2)).submit(any());
+	}
+}
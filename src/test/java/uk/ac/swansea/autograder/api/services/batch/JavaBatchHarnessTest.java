@@ -0,0 +1,43 @@
+package uk.ac.swansea.autograder.api.services.batch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class JavaBatchHarnessTest {
+
+	@Test
+	void findsClassDeclaringMain() {
+		String code = """
+				// class Comment {}
+				import java.util.*;
+				class Helper { int x; }
+				public class Main {
+				    static String s = "class Fake {";
+				    char c = '{';
+				    public static void main(String[] args) {}
+				}
+				""";
+
+		assertThat(JavaBatchHarness.mainClass(code)).isEqualTo("Main");
+	}
+
+	@Test
+	void namesNestedClassByBinaryName() {
+		assertThat(JavaBatchHarness.mainClass("class A { static class B { public static void main(String[] a) {} } }"))
+				.isEqualTo("A$B");
+	}
+
+	@Test
+	void skipsAnonymousClassBodies() {
+		String code = "class A { Runnable r = new Runnable() { public void run() {} }; }\n"
+				+ "enum E { X; public static void main(String[] a) {} }";
+
+		assertThat(JavaBatchHarness.mainClass(code)).isEqualTo("E");
+	}
+
+	@Test
+	void ignoresMainInComments() {
+		assertThat(JavaBatchHarness.mainClass("class A { /* static void main( */ }")).isNull();
+	}
+}
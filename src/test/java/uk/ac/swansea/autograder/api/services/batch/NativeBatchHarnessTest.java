@@ -0,0 +1,107 @@
+package uk.ac.swansea.autograder.api.services.batch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compiles the wrapped code with the local gcc/g++ at -O2, skipped where they are not installed.
+ */
+class NativeBatchHarnessTest {
+
+	private static final String NONCE = "n0nce";
+
+	private static final List<String> INPUTS = List.of("4\n", "5\n", "60\n");
+
+	@TempDir
+	Path dir;
+
+	@Test
+	@EnabledIf("gppAvailable")
+	void cppMainWithoutReturnRunsEveryCase() throws Exception {
+		String code = """
+				#include <iostream>
+				static int counter = 0;
+				int main() {
+				    int x;
+				    counter++;
+				    std::cin >> x;
+				    std::cout << x * 2 << " " << counter << std::endl;
+				}
+				""";
+
+		assertThat(run(new CppBatchHarness(), "g++", "main.cpp", code))
+				.containsExactly("8 1\n", "10 1\n", "120 1\n");
+	}
+
+	@Test
+	@EnabledIf("gccAvailable")
+	void cMainWithoutReturnRunsEveryCase() throws Exception {
+		String code = """
+				#include <stdio.h>
+				static int counter = 0;
+				int main() {
+				    int x;
+				    counter++;
+				    scanf("%d", &x);
+				    printf("%d %d\\n", x * 2, counter);
+				}
+				""";
+
+		assertThat(run(new CBatchHarness(), "gcc", "main.c", code))
+				.containsExactly("8 1\n", "10 1\n", "120 1\n");
+	}
+
+	private List<String> run(NativeBatchHarness harness, String compiler, String filename, String code)
+			throws IOException, InterruptedException {
+		Path source = dir.resolve(filename);
+		Files.writeString(source, harness.wrap(filename, code, NONCE).get(0).getContent());
+		Path binary = dir.resolve("a.out");
+		Process compile = new ProcessBuilder(compiler, "-O2", "-o", binary.toString(), source.toString())
+				.redirectErrorStream(true)
+				.redirectOutput(dir.resolve("compile.log").toFile())
+				.start();
+		assertThat(compile.waitFor()).isZero();
+
+		Path stdin = Files.writeString(dir.resolve("stdin"), BatchFraming.encode(INPUTS));
+		Path stdout = dir.resolve("stdout");
+		Process process = new ProcessBuilder(binary.toString())
+				.redirectInput(stdin.toFile())
+				.redirectOutput(stdout.toFile())
+				.redirectError(ProcessBuilder.Redirect.DISCARD)
+				.start();
+		try {
+			// falling off main used to run into the following code and never finish
+			assertThat(process.waitFor(10, TimeUnit.SECONDS)).isTrue();
+		} finally {
+			process.destroyForcibly();
+		}
+		return BatchFraming.decode(Files.readString(stdout), NONCE, INPUTS.size()).stream()
+				.map(BatchFraming.Frame::stdout)
+				.toList();
+	}
+
+	static boolean gppAvailable() {
+		return available("g++");
+	}
+
+	static boolean gccAvailable() {
+		return available("gcc");
+	}
+
+	private static boolean available(String compiler) {
+		try {
+			return new ProcessBuilder(compiler, "--version").start().waitFor() == 0;
+		} catch (IOException | InterruptedException e) {
+			return false;
+		}
+	}
+}
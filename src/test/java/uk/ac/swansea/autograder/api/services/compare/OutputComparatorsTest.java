@@ -0,0 +1,54 @@
+package uk.ac.swansea.autograder.api.services.compare;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import uk.ac.swansea.autograder.api.entities.Problem.ComparisonMode;
+
+class OutputComparatorsTest {
+
+	@Test
+	void exactIgnoresOnlyTheFinalLineTerminator() {
+		OutputComparator comparator = OutputComparators.of(ComparisonMode.EXACT, null);
+		assertThat(comparator.matches("1\n2\n", "1\n2")).isTrue();
+		assertThat(comparator.matches("1\r\n2\r\n", "1\r\n2")).isTrue();
+		assertThat(comparator.matches("1\n2", "1\n2")).isTrue();
+		assertThat(comparator.matches("1\n2 \n", "1\n2")).isFalse();
+		assertThat(comparator.matches("1\n2\n\n", "1\n2")).isFalse();
+	}
+
+	@Test
+	void ignoreTrailingWhitespaceComparesLinesWithoutTrailingBlanks() {
+		OutputComparator comparator = OutputComparators.of(ComparisonMode.IGNORE_TRAILING_WHITESPACE, null);
+		assertThat(comparator.matches("a b  \r\nc\n\n", "a b\nc")).isTrue();
+		assertThat(comparator.matches("a b\n", "a  b")).isFalse();
+		assertThat(comparator.matches("a\n", "a\nb")).isFalse();
+		assertThat(comparator.matches("", "\n")).isTrue();
+	}
+
+	@Test
+	void tokenIgnoresLayout() {
+		OutputComparator comparator = OutputComparators.of(ComparisonMode.TOKEN, null);
+		assertThat(comparator.matches("  1 2\n3\t", "1\n2 3")).isTrue();
+		assertThat(comparator.matches("1 2", "1 2 3")).isFalse();
+		assertThat(comparator.matches("1.0", "1")).isFalse();
+	}
+
+	@Test
+	void floatEpsilonAcceptsCloseNumbers() {
+		OutputComparator comparator = OutputComparators.of(ComparisonMode.FLOAT_EPSILON, 1e-3);
+		assertThat(comparator.matches("3.1416 ok", "3.14159 ok")).isTrue();
+		assertThat(comparator.matches("3.15", "3.14159")).isFalse();
+		assertThat(comparator.matches("1000000.5", "1000000")).isTrue();
+		assertThat(comparator.matches("NaN", "NaN")).isTrue();
+		assertThat(comparator.matches("abc", "abd")).isFalse();
+	}
+
+	@Test
+	void storedOutputLosesItsFinalNewline() {
+		assertThat(OutputComparators.stripTrailingNewline("a\r\n")).isEqualTo("a");
+		assertThat(OutputComparators.stripTrailingNewline("a")).isEqualTo("a");
+		assertThat(OutputComparators.stripTrailingNewline(null)).isNull();
+	}
+}
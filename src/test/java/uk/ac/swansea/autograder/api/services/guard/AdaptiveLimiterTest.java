@@ -0,0 +1,30 @@
+package uk.ac.swansea.autograder.api.services.guard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptiveLimiterTest {
+
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(2000);
+
+	private final AdaptiveLimiter limiter = new AdaptiveLimiter(10, 2, 20, 0.5, 1000);
+
+	@Test
+	void slowResponseCutsLimit() throws InterruptedException {
+		assertThat(limiter.acquire(0)).isTrue();
+		limiter.release(SLOW, false);
+		assertThat(limiter.getLimit()).isEqualTo(5);
+		assertThat(limiter.getInFlight()).isZero();
+	}
+
+	@Test
+	void untimedResponseKeepsLimit() throws InterruptedException {
+		assertThat(limiter.acquire(0)).isTrue();
+		limiter.releaseUntimed();
+		assertThat(limiter.getLimit()).isEqualTo(10);
+		assertThat(limiter.getInFlight()).isZero();
+	}
+}
@@ -0,0 +1,56 @@
+package uk.ac.swansea.autograder.api.services.guard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+	private final AtomicLong now = new AtomicLong();
+
+	private final CircuitBreaker breaker = new CircuitBreaker(4, 4, 0.5, 1000, 2, now::get);
+
+	private void call(boolean failed) {
+		assertThat(breaker.tryAcquire()).isTrue();
+		breaker.onResult(failed);
+	}
+
+	@Test
+	void opensOnceFailureRateReachesThreshold() {
+		call(false);
+		call(true);
+		call(false);
+		assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+		call(true);
+		assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+		assertThat(breaker.tryAcquire()).isFalse();
+		assertThat(breaker.retryAfterMillis()).isEqualTo(1000);
+	}
+
+	@Test
+	void closesAfterSuccessfulTrialCalls() {
+		for (int i = 0; i < 4; i++) {
+			call(true);
+		}
+		now.addAndGet(1000);
+		call(false);
+		assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+		call(false);
+		assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+	}
+
+	@Test
+	void reopensWhenTrialCallFails() {
+		for (int i = 0; i < 4; i++) {
+			call(true);
+		}
+		now.addAndGet(1000);
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.tryAcquire()).isFalse();
+		breaker.onResult(true);
+		assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+	}
+}
@@ -0,0 +1,66 @@
+package uk.ac.swansea.autograder.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Date;
+import java.util.Set;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class JwtTokenProviderTest {
+
+	private static final String SECRET = "test-secret";
+
+	private JwtTokenProvider tokenProvider;
+
+	@BeforeEach
+	void setUp() {
+		tokenProvider = new JwtTokenProvider();
+		ReflectionTestUtils.setField(tokenProvider, "jwtSecret", SECRET);
+		ReflectionTestUtils.setField(tokenProvider, "jwtExpirationInMinutes", 60);
+		tokenProvider.init();
+	}
+
+	@Test
+	void rebuildsUserFromClaims() {
+		MyUserDetails user = new MyUserDetails(7L, "alice", "student", 3, Set.of("VIEW_PROBLEM", "CREATE_SUBMISSION"));
+		String token = tokenProvider.generateUserToken(
+				new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+
+		MyUserDetails fromToken = tokenProvider.getUserDetailsFromJWT(tokenProvider.verifyToken(token));
+
+		assertThat(fromToken.getId()).isEqualTo(7L);
+		assertThat(fromToken.getUsername()).isEqualTo("alice");
+		assertThat(fromToken.getRoleName()).isEqualTo("student");
+		assertThat(fromToken.getTokenVersion()).isEqualTo(3);
+		assertThat(fromToken.getAuthorities()).extracting(GrantedAuthority::getAuthority)
+				.containsExactlyInAnyOrder("VIEW_PROBLEM", "CREATE_SUBMISSION");
+	}
+
+	@Test
+	void tokenWithoutPermissionsNeedsUserToBeLoaded() {
+		String token = JWT.create()
+				.withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+				.withClaim("id", 7L)
+				.withClaim("username", "alice")
+				.withClaim("role", "student")
+				.sign(Algorithm.HMAC256(SECRET.getBytes()));
+
+		assertThat(tokenProvider.getUserDetailsFromJWT(tokenProvider.verifyToken(token))).isNull();
+	}
+
+	@Test
+	void rejectsTokenSignedWithAnotherSecret() {
+		String token = JWT.create()
+				.withClaim("id", 7L)
+				.sign(Algorithm.HMAC256("another-secret".getBytes()));
+
+		assertThat(tokenProvider.verifyToken(token)).isNull();
+	}
+}